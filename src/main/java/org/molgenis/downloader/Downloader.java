@@ -5,12 +5,21 @@ import com.google.common.base.Charsets;
 import joptsimple.OptionException;
 import joptsimple.OptionParser;
 import joptsimple.OptionSet;
-import org.apache.http.client.HttpClient;
-import org.molgenis.downloader.api.MolgenisClient;
+import org.molgenis.downloader.api.EntitySelection;
+import org.molgenis.downloader.api.ThreadMode;
 import org.molgenis.downloader.api.metadata.MolgenisVersion;
+import org.molgenis.downloader.client.AsyncHttpTransport;
+import org.molgenis.downloader.client.BlockingHttpTransport;
+import org.molgenis.downloader.client.HttpClientConfig;
 import org.molgenis.downloader.client.HttpClientFactory;
+import org.molgenis.downloader.client.HttpTransport;
 import org.molgenis.downloader.client.MolgenisRestApiClient;
+import org.molgenis.downloader.client.PagingMode;
+import org.molgenis.downloader.client.MetadataCache;
+import org.molgenis.downloader.client.RetryPolicy;
 import org.molgenis.downloader.emx.EMXClient;
+import org.molgenis.downloader.emx.excel.ExcelBackend;
+import org.molgenis.downloader.emx.tsv.Codec;
 import org.molgenis.downloader.rdf.RdfClient;
 import org.molgenis.downloader.rdf.RdfConfigImpl;
 import org.slf4j.Logger;
@@ -20,7 +29,12 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import static com.google.common.base.Strings.repeat;
 import static com.google.common.io.Resources.getResource;
@@ -45,7 +59,36 @@ public class Downloader
 	private static final String SOCKET_TIMEOUT = "timeout";
 	private static final String DEFAULT_NAMESPACE = "defaultNamespace";
 	private static final String NAMESPACES = "namespaces";
+	private static final String WORKERS = "workers";
+	private static final String PREFETCH = "prefetch";
+	private static final String PAGING = "paging";
+	private static final String PARTITIONS = "partitions";
+	private static final String UNORDERED = "unordered";
+	private static final String MAX_CONNECTIONS = "maxConnections";
+	private static final String KEEP_ALIVE = "keepAlive";
+	private static final String NO_COMPRESSION = "noCompression";
+	private static final String ASYNC = "async";
+	private static final String THREADS = "threads";
+	private static final String CONCURRENCY = "concurrency";
+	private static final String TARGET_PAGE_TIME = "targetPageTime";
+	private static final String RETRIES = "retries";
+	private static final String NO_PROJECTION = "noProjection";
+	private static final String RETRY_DELAY = "retryDelay";
+	private static final String EXCEL_ROW_WINDOW = "excelRowWindow";
+	private static final String COMPRESS_TEMP_FILES = "compressTempFiles";
+	private static final String COMPRESSION_LEVEL = "compressionLevel";
+	private static final String STORED = "stored";
+	private static final String DIRECTORY = "directory";
+	private static final String CODEC = "codec";
+	private static final String RESUME = "resume";
+	private static final String COLUMNS = "columns";
+	private static final String FILTER = "filter";
+	private static final String INCREMENTAL = "incremental";
+	private static final String MODIFIED_ATTRIBUTE = "modifiedAttribute";
+	private static final String METADATA_CACHE = "metadataCache";
+	private static final String METADATA_CACHE_MAX_AGE = "metadataCacheMaxAge";
 	private static final Integer DEFAULT_SOCKET_TIMEOUT = 60;
+	private static final Integer DEFAULT_WORKERS = 1;
 	private static final String RDF = "rdf";
 
 	public static void main(final String[] args) throws IOException
@@ -119,6 +162,109 @@ public class Downloader
 		parser.acceptsAll(asList("t", SOCKET_TIMEOUT), "The socket timeout in seconds, default value is 60")
 			  .withRequiredArg()
 			  .ofType(Integer.class);
+		parser.acceptsAll(asList("w", WORKERS),
+				"The number of entities to download in parallel in EMX download, default value is 1")
+			  .withRequiredArg()
+			  .ofType(Integer.class);
+		parser.accepts(PREFETCH,
+				"The number of pages to fetch ahead on a background thread while the current page is written, "
+						+ "default value is 0")
+			  .withRequiredArg()
+			  .ofType(Integer.class);
+		parser.accepts(PAGING, "How to request the next page: 'nextHref' follows the link in each response, "
+				+ "'offset' computes the page offsets so several pages can be fetched at once, 'keyset' requests the "
+				+ "rows after the last id of the previous page, which stays fast deep into large tables. "
+				+ "Default is 'nextHref'.")
+			  .withRequiredArg()
+			  .ofType(String.class);
+		parser.accepts(PARTITIONS, "The number of id ranges to split each entity into, to download the ranges of an "
+				+ "entity in parallel, default value is 1")
+			  .withRequiredArg()
+			  .ofType(Integer.class);
+		parser.accepts(UNORDERED, "Write the rows of an entity that is split into id ranges in the order they arrive "
+				+ "instead of in id order, so that no temporary files are needed.");
+		parser.accepts(MAX_CONNECTIONS, "The number of connections to keep open to the server, default value is the "
+				+ "number of requests that can be made at the same time: workers x partitions x (1 + prefetch)")
+			  .withRequiredArg()
+			  .ofType(Integer.class);
+		parser.accepts(KEEP_ALIVE, "The number of seconds to keep an idle connection open for reuse, when the server "
+				+ "does not say otherwise, default value is " + HttpClientConfig.DEFAULT_KEEP_ALIVE)
+			  .withRequiredArg()
+			  .ofType(Integer.class);
+		parser.accepts(NO_COMPRESSION, "Do not ask the server to compress its responses.");
+		parser.accepts(ASYNC, "Send the requests for prefetched pages on a non-blocking HTTP client, so that they do "
+				+ "not each take up a thread while waiting for the server. Other requests stay on a blocking client, "
+				+ "so that their responses are parsed while they stream in. Requires --prefetch greater than 0.");
+		parser.accepts(THREADS, "The kind of threads to download entities and pages on: 'platform' or 'virtual'. "
+				+ "Virtual threads need Java 21 or newer and allow many more workers. Default is 'platform'.")
+			  .withRequiredArg()
+			  .ofType(String.class);
+		parser.accepts(CONCURRENCY, "The maximum number of requests to send to the server at the same time, over all "
+				+ "workers, partitions and prefetched pages, default value is unlimited")
+			  .withRequiredArg()
+			  .ofType(Integer.class);
+		parser.accepts(TARGET_PAGE_TIME, "Adapt the page size of each entity so that a page takes about this many "
+				+ "milliseconds to download, starting from the page size given with --" + PAGESIZE + ". Pages that "
+				+ "are prefetched keep a fixed size.")
+			  .withRequiredArg()
+			  .ofType(Integer.class);
+		parser.accepts(NO_PROJECTION, "Request all attributes of an entity with referenced entities expanded, instead "
+				+ "of only the attributes that are written with only the ids of referenced entities.");
+		parser.accepts(RETRIES, "The number of times to send a request again after a connection error, a server "
+				+ "error or a 429 Too Many Requests, default value is " + RetryPolicy.DEFAULT_RETRIES)
+			  .withRequiredArg()
+			  .ofType(Integer.class);
+		parser.accepts(RETRY_DELAY, "The number of milliseconds to wait at most before the first retry, doubled for "
+				+ "every next retry of the same request, default value is " + RetryPolicy.DEFAULT_INITIAL_DELAY)
+			  .withRequiredArg()
+			  .ofType(Integer.class);
+		parser.accepts(EXCEL_ROW_WINDOW,
+				"The number of rows per sheet to keep in memory when writing an Excel file, default value is "
+						+ ExcelBackend.DEFAULT_ROW_WINDOW)
+			  .withRequiredArg()
+			  .ofType(Integer.class);
+		parser.accepts(COMPRESS_TEMP_FILES,
+				"Compress the temporary files that rows are flushed to while writing an Excel file.");
+		parser.accepts(COMPRESSION_LEVEL,
+				"The compression level of the zip file, 0-9, or 'stored' to store the entries without compression.")
+			  .withRequiredArg()
+			  .ofType(String.class);
+		parser.accepts(DIRECTORY,
+				"Write one uncompressed TSV file per entity into the output directory instead of a single file.");
+		parser.accepts(CODEC, "Write one TSV file per entity into the output directory, compressed with the given "
+				+ "codec: 'gzip' or 'lz4'. The level is set with --" + COMPRESSION_LEVEL + ".")
+			  .withRequiredArg()
+			  .ofType(String.class);
+		parser.accepts(RESUME, "Continue an interrupted export to a directory of uncompressed TSV files from the "
+				+ "checkpoint file next to it, instead of starting over.");
+		parser.accepts(COLUMNS, "The attributes to download of an entity, as entity=attribute1,attribute2. "
+				+ "Selecting a compound attribute selects its parts. The id attribute is always downloaded. Can be "
+				+ "given once per entity, EMX only.")
+			  .withRequiredArg()
+			  .ofType(String.class);
+		parser.accepts(FILTER, "An RSQL query that the downloaded rows of an entity should match, as entity=query, "
+				+ "for example 'person=age=ge=18'. Can be given once per entity, EMX only.")
+			  .withRequiredArg()
+			  .ofType(String.class);
+		parser.accepts(INCREMENTAL, "Download only the rows that changed since the previous export with the same state "
+				+ "file, selected on the last-modified attribute of each entity. Rows that were deleted are not "
+				+ "detected. EMX only.")
+			  .withRequiredArg()
+			  .ofType(File.class);
+		parser.accepts(MODIFIED_ATTRIBUTE, "The last-modified attribute of an entity for --" + INCREMENTAL + ", as "
+				+ "entity=attribute. Default is the DATE_TIME attribute of the entity with auto=true.")
+			  .withRequiredArg()
+			  .ofType(String.class);
+		parser.accepts(METADATA_CACHE, "A directory to keep the metadata in between runs. The cached metadata is used "
+				+ "as long as the number of rows in each metadata repository on the server stays the same. Changes "
+				+ "that keep the number of rows the same, such as a renamed attribute, are only picked up once the "
+				+ "cached metadata is older than --" + METADATA_CACHE_MAX_AGE + ".")
+			  .withRequiredArg()
+			  .ofType(File.class);
+		parser.accepts(METADATA_CACHE_MAX_AGE, "The number of hours after which the cached metadata is downloaded "
+				+ "again, even if it seems unchanged, default value is " + MetadataCache.DEFAULT_MAX_AGE_HOURS)
+			  .withRequiredArg()
+			  .ofType(Integer.class);
 		parser.accepts(DEFAULT_NAMESPACE,
 				"The default namespace for newly created IRIs in RDF download, and the prefix to use. "
 						+ "Format is prefix:namespace. " + "Default value is 'mlg:http://molgenis.org/'.")
@@ -148,6 +294,29 @@ public class Downloader
 		String versionString = (String) options.valueOf(VERSION);
 		Integer socketTimeout = options.hasArgument(SOCKET_TIMEOUT) ? (Integer) options.valueOf(
 				SOCKET_TIMEOUT) : DEFAULT_SOCKET_TIMEOUT;
+		Integer workers = options.hasArgument(WORKERS) ? (Integer) options.valueOf(WORKERS) : DEFAULT_WORKERS;
+		Integer prefetch = options.hasArgument(PREFETCH) ? (Integer) options.valueOf(PREFETCH) : 0;
+		Integer partitions = options.hasArgument(PARTITIONS) ? (Integer) options.valueOf(PARTITIONS) : 1;
+		PagingMode pagingMode = options.hasArgument(PAGING) ? PagingMode.from(
+				(String) options.valueOf(PAGING)) : PagingMode.NEXT_HREF;
+		ThreadMode threadMode = options.hasArgument(THREADS) ? ThreadMode.from(
+				(String) options.valueOf(THREADS)) : ThreadMode.PLATFORM;
+		Integer concurrency = options.hasArgument(CONCURRENCY) ? (Integer) options.valueOf(CONCURRENCY) : null;
+
+		boolean directory = (options.has(DIRECTORY) || options.has(CODEC)) && !options.has(RDF);
+		boolean resume = options.has(RESUME);
+		if (resume && (!directory || options.has(CODEC)))
+		{
+			LOG.error("--{} only works for exports with --{} and without --{}: zip, xlsx, compressed and RDF "
+					+ "exports cannot be resumed. Aborting export.", RESUME, DIRECTORY, CODEC);
+			return;
+		}
+		if (options.has(ASYNC) && prefetch <= 0)
+		{
+			LOG.error("--{} only works together with --{} greater than 0, only prefetched pages are requested "
+					+ "asynchronously. Aborting export.", ASYNC, PREFETCH);
+			return;
+		}
 
 		if (options.has(DEBUG))
 		{
@@ -155,11 +324,60 @@ public class Downloader
 					"org.molgenis");
 			root.setLevel(Level.DEBUG);
 		}
+		if (threadMode == ThreadMode.VIRTUAL && !ThreadMode.isVirtualSupported())
+		{
+			LOG.warn("Virtual threads are not supported by Java {}, using platform threads instead.",
+					System.getProperty("java.version"));
+		}
 
-		final HttpClient client = HttpClientFactory.create(insecureSSL);
+		final HttpClientConfig httpConfig = new HttpClientConfig();
+		httpConfig.setInsecure(insecureSSL);
+		if (options.hasArgument(MAX_CONNECTIONS))
+		{
+			httpConfig.setMaxConnections((Integer) options.valueOf(MAX_CONNECTIONS));
+		}
+		else
+		{
+			final int requests = Math.max(2, workers * partitions * (1 + prefetch));
+			httpConfig.setMaxConnections(concurrency != null ? Math.min(concurrency, requests) : requests);
+		}
+		if (options.hasArgument(KEEP_ALIVE))
+		{
+			httpConfig.setKeepAlive((Integer) options.valueOf(KEEP_ALIVE));
+		}
+		httpConfig.setCompression(!options.has(NO_COMPRESSION));
+		httpConfig.setSocketTimeout(socketTimeout);
 
-		try (final MolgenisClient molgenis = new MolgenisRestApiClient(client, url))
+		final HttpTransport transport = options.has(ASYNC) ? new AsyncHttpTransport(
+				HttpClientFactory.createAsync(httpConfig), HttpClientFactory.create(httpConfig)) :
+				new BlockingHttpTransport(HttpClientFactory.create(httpConfig), threadMode);
+		try (final MolgenisRestApiClient molgenis = new MolgenisRestApiClient(transport, url))
 		{
+			molgenis.setThreadMode(threadMode);
+			molgenis.setProjection(!options.has(NO_PROJECTION));
+			molgenis.setRetryPolicy(new RetryPolicy(
+					options.hasArgument(RETRIES) ? (Integer) options.valueOf(RETRIES) : RetryPolicy.DEFAULT_RETRIES,
+					options.hasArgument(RETRY_DELAY) ? (Integer) options.valueOf(
+							RETRY_DELAY) : RetryPolicy.DEFAULT_INITIAL_DELAY, RetryPolicy.DEFAULT_MAX_DELAY));
+			if (options.hasArgument(METADATA_CACHE))
+			{
+				final int maxAgeHours = options.hasArgument(METADATA_CACHE_MAX_AGE) ? (Integer) options.valueOf(
+						METADATA_CACHE_MAX_AGE) : MetadataCache.DEFAULT_MAX_AGE_HOURS;
+				molgenis.setMetadataCache(new MetadataCache(((File) options.valueOf(METADATA_CACHE)).toPath(),
+						TimeUnit.HOURS.toMillis(maxAgeHours)));
+			}
+			if (options.hasArgument(TARGET_PAGE_TIME))
+			{
+				molgenis.setTargetPageMillis((Integer) options.valueOf(TARGET_PAGE_TIME));
+			}
+			if (concurrency != null)
+			{
+				molgenis.setConcurrency(concurrency);
+			}
+			molgenis.setPagingMode(pagingMode);
+			molgenis.setPrefetchPages(prefetch);
+			molgenis.setPartitions(partitions);
+			molgenis.setOrderedPartitions(!options.has(UNORDERED));
 			MolgenisVersion version;
 			if (versionString != null)
 			{
@@ -170,7 +388,7 @@ public class Downloader
 				version = molgenis.getVersion();
 			}
 			logOptionInfo(outFile, url, pageSize, includeMetaData, insecureSSL, username, overwrite, socketTimeout,
-					version);
+					version, workers, prefetch, pagingMode, threadMode, concurrency);
 			if (username != null)
 			{
 				if (password == null)
@@ -190,7 +408,20 @@ public class Downloader
 				molgenis.login(username, password, socketTimeout);
 			}
 
-			if (outFile.exists())
+			if (outFile.exists() && directory)
+			{
+				if (!outFile.isDirectory())
+				{
+					LOG.error("Output path exists and is not a directory. Aborting export.");
+					return;
+				}
+				if (!overwrite && !resume)
+				{
+					LOG.error("Output directory already exists and overwrite options is not specified. Aborting export.");
+					return;
+				}
+			}
+			else if (outFile.exists())
 			{
 				if (overwrite)
 				{
@@ -208,6 +439,27 @@ public class Downloader
 				}
 			}
 
+			@SuppressWarnings("unchecked")
+			final Map<String, EntitySelection> selections = parseSelections((List<String>) options.valuesOf(COLUMNS),
+					(List<String>) options.valuesOf(FILTER));
+			if (options.has(RDF) && (!selections.isEmpty() || options.has(INCREMENTAL)))
+			{
+				LOG.error("Selecting columns, filtering rows and incremental exports are only supported for EMX "
+						+ "exports. Aborting export.");
+				return;
+			}
+			for (final Map.Entry<String, EntitySelection> selection : selections.entrySet())
+			{
+				final Set<String> unknown = selection.getValue().getUnknownAttributes(
+						molgenis.getEntity(selection.getKey()));
+				if (!unknown.isEmpty())
+				{
+					LOG.error("Entity {} has no attribute(s) {}, check the --{} option. Aborting export.",
+							selection.getKey(), String.join(", ", unknown), COLUMNS);
+					return;
+				}
+			}
+			selections.forEach((name, selection) -> LOG.info("selection:     {} {}", name, selection));
 			if (options.has(RDF))
 			{
 				RdfConfigImpl rdfConfig = new RdfConfigImpl();
@@ -235,7 +487,43 @@ public class Downloader
 			}
 			else
 			{
-				final EMXClient emxClient = new EMXClient(molgenis);
+				final EMXClient emxClient = new EMXClient(molgenis, workers);
+				if (options.hasArgument(EXCEL_ROW_WINDOW))
+				{
+					emxClient.setExcelRowWindow((Integer) options.valueOf(EXCEL_ROW_WINDOW));
+				}
+				emxClient.setCompressTempFiles(options.has(COMPRESS_TEMP_FILES));
+				emxClient.setDirectory(directory);
+				emxClient.setThreadMode(threadMode);
+				emxClient.setResume(resume);
+				emxClient.setSelections(selections);
+				if (options.hasArgument(INCREMENTAL))
+				{
+					final Map<String, String> modifiedAttributes = new LinkedHashMap<>();
+					for (final Object value : options.valuesOf(MODIFIED_ATTRIBUTE))
+					{
+						final String[] parts = splitEntityOption(MODIFIED_ATTRIBUTE, (String) value);
+						modifiedAttributes.put(parts[0], parts[1]);
+					}
+					emxClient.setDeltaState(((File) options.valueOf(INCREMENTAL)).toPath());
+					emxClient.setModifiedAttributes(modifiedAttributes);
+				}
+				if (options.hasArgument(CODEC))
+				{
+					emxClient.setCodec(Codec.from((String) options.valueOf(CODEC)));
+				}
+				if (options.hasArgument(COMPRESSION_LEVEL))
+				{
+					String compressionLevel = (String) options.valueOf(COMPRESSION_LEVEL);
+					if (STORED.equalsIgnoreCase(compressionLevel))
+					{
+						emxClient.setStored(true);
+					}
+					else
+					{
+						emxClient.setCompressionLevel(Integer.parseInt(compressionLevel));
+					}
+				}
 				boolean hasErrors = emxClient.downloadEMX(entities, Paths.get(outFile.getPath()), includeMetaData,
 						overwrite, version, pageSize);
 				if (hasErrors)
@@ -244,12 +532,54 @@ public class Downloader
 					emxClient.getExceptions().forEach(ex -> LOG.warn("Error: ", ex));
 				}
 			}
+			molgenis.getRetryCounts().forEach((name, count) -> LOG.info("Retried {} request(s) for {}.", count, name));
 		}
 
 	}
 
+	/**
+	 * @param columns the attribute selections, formatted as entity=attribute1,attribute2
+	 * @param filters the row filters, formatted as entity=query
+	 * @return the selection per entity name
+	 */
+	static Map<String, EntitySelection> parseSelections(final List<String> columns, final List<String> filters)
+	{
+		final Map<String, List<String>> attributes = new LinkedHashMap<>();
+		for (final String value : columns)
+		{
+			final String[] parts = splitEntityOption(COLUMNS, value);
+			attributes.put(parts[0], asList(parts[1].split("\\s*,\\s*")));
+		}
+		final Map<String, String> queries = new LinkedHashMap<>();
+		for (final String value : filters)
+		{
+			final String[] parts = splitEntityOption(FILTER, value);
+			queries.put(parts[0], parts[1]);
+		}
+		final Set<String> entities = new LinkedHashSet<>(attributes.keySet());
+		entities.addAll(queries.keySet());
+		final Map<String, EntitySelection> selections = new LinkedHashMap<>();
+		for (final String entity : entities)
+		{
+			selections.put(entity, new EntitySelection(attributes.get(entity), queries.get(entity)));
+		}
+		return selections;
+	}
+
+	private static String[] splitEntityOption(final String option, final String value)
+	{
+		final String[] parts = value.split("=", 2);
+		if (parts.length != 2 || parts[0].trim().isEmpty() || parts[1].trim().isEmpty())
+		{
+			throw new IllegalArgumentException(
+					"The value of --" + option + " should be formatted as entity=value, not '" + value + "'");
+		}
+		return new String[] { parts[0].trim(), parts[1].trim() };
+	}
+
 	private void logOptionInfo(File outFile, URI url, Integer pageSize, boolean includeMetaData, boolean insecureSSL,
-			String username, boolean overwrite, Integer socketTimeout, MolgenisVersion version)
+			String username, boolean overwrite, Integer socketTimeout, MolgenisVersion version, Integer workers,
+			Integer prefetch, PagingMode pagingMode, ThreadMode threadMode, Integer concurrency)
 	{
 		if (LOG.isInfoEnabled())
 		{
@@ -262,6 +592,11 @@ public class Downloader
 				LOG.info("version:       {}", version.toVersionString());
 			}
 			if (pageSize != null) LOG.info("pageSize:      {}", pageSize);
+			if (workers > 1) LOG.info("workers:       {}", workers);
+			if (prefetch > 0) LOG.info("prefetch:      {}", prefetch);
+			if (pagingMode != PagingMode.NEXT_HREF) LOG.info("paging:        {}", pagingMode);
+			if (threadMode != ThreadMode.PLATFORM) LOG.info("threads:       {}", threadMode);
+			if (concurrency != null) LOG.info("concurrency:   {}", concurrency);
 			if (!includeMetaData) LOG.info("* only data");
 			if (insecureSSL) LOG.info("* insecure SSL");
 			if (overwrite) LOG.info("* overwrite existing output if present");
@@ -0,0 +1,44 @@
+package org.molgenis.downloader.api;
+
+/**
+ * The position in the rows of an entity, sorted on the id attribute, up to which the rows have been consumed.
+ */
+public class Checkpoint
+{
+	private final int rows;
+	private final String lastId;
+	private final boolean complete;
+
+	/**
+	 * @param rows     the number of rows consumed
+	 * @param lastId   the id of the last row consumed, or null if no rows were consumed
+	 * @param complete whether all rows of the entity have been consumed
+	 */
+	public Checkpoint(final int rows, final String lastId, final boolean complete)
+	{
+		this.rows = rows;
+		this.lastId = lastId;
+		this.complete = complete;
+	}
+
+	public int getRows()
+	{
+		return rows;
+	}
+
+	public String getLastId()
+	{
+		return lastId;
+	}
+
+	public boolean isComplete()
+	{
+		return complete;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "Checkpoint{rows=" + rows + ", lastId=" + lastId + ", complete=" + complete + '}';
+	}
+}
@@ -7,4 +7,12 @@ public interface EMXBackend extends AutoCloseable
 
 	EMXDataStore createDataStore(final String name) throws IOException;
 
+	/**
+	 * @return whether data stores of an earlier, interrupted export can be resumed, in which case this is a
+	 * {@link ResumableBackend}
+	 */
+	default boolean isResumable()
+	{
+		return false;
+	}
 }
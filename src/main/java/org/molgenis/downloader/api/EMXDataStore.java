@@ -1,9 +1,29 @@
 package org.molgenis.downloader.api;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 
-public interface EMXDataStore
+public interface EMXDataStore extends AutoCloseable
 {
 	void writeRow(final List<String> values) throws IOException;
+
+	/**
+	 * Writes a row of values. Callers may reuse the array for the next row once this method returns, so
+	 * implementations should not keep a reference to it.
+	 */
+	default void writeRow(final String[] values) throws IOException
+	{
+		writeRow(Arrays.asList(values));
+	}
+
+	/**
+	 * Signals that all rows have been written, so the backend can finish the data store without waiting for the
+	 * backend itself to be closed.
+	 */
+	@Override
+	default void close() throws IOException
+	{
+
+	}
 }
@@ -4,13 +4,32 @@ import org.molgenis.downloader.api.metadata.Attribute;
 import org.molgenis.downloader.api.metadata.DataType;
 import org.molgenis.downloader.api.metadata.Entity;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Consumer;
 
-public interface EntityConsumer extends Consumer<Map<String, String>>
+public interface EntityConsumer extends Consumer<Map<String, String>>, AutoCloseable
 {
+	/**
+	 * Signals that all data of the entity has been consumed.
+	 */
+	@Override
+	default void close() throws Exception
+	{
+
+	}
+
+	/**
+	 * Signals that all rows of a page have been consumed. Rows are consumed in the order of the id attribute, so
+	 * the download of the entity can later be resumed from the checkpoint.
+	 */
+	default void pageConsumed(final Checkpoint checkpoint) throws IOException
+	{
+
+	}
+
 	default List<Attribute> getParts(final Attribute compound)
 	{
 		List<Attribute> atts = new ArrayList<>();
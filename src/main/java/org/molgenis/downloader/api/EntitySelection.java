@@ -0,0 +1,144 @@
+package org.molgenis.downloader.api;
+
+import org.molgenis.downloader.api.metadata.Attribute;
+import org.molgenis.downloader.api.metadata.DataType;
+import org.molgenis.downloader.api.metadata.Entity;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * The part of an entity to download: the rows that match an RSQL query, and a subset of the attributes. The id
+ * attribute is always included, because the rows are sorted, split into id ranges and resumed on their ids.
+ */
+public class EntitySelection
+{
+	private final Set<String> attributes;
+	private final String filter;
+
+	/**
+	 * @param attributes the names of the attributes to download, or null to download all attributes
+	 * @param filter     the RSQL query the rows should match, or null to download all rows
+	 */
+	public EntitySelection(final Collection<String> attributes, final String filter)
+	{
+		if (attributes != null && attributes.isEmpty())
+		{
+			throw new IllegalArgumentException("At least one attribute should be selected");
+		}
+		this.attributes = attributes != null ? Collections.unmodifiableSet(new LinkedHashSet<>(attributes)) : null;
+		this.filter = filter;
+	}
+
+	/**
+	 * @return the names of the selected attributes, or null if all attributes are selected
+	 */
+	public Set<String> getAttributes()
+	{
+		return attributes;
+	}
+
+	/**
+	 * @return the RSQL query the rows should match, or null if all rows are selected
+	 */
+	public String getFilter()
+	{
+		return filter;
+	}
+
+	/**
+	 * @param constraint an RSQL query the rows should match as well
+	 * @return a selection of the same attributes, of the rows that match both the filter and the constraint
+	 */
+	public EntitySelection and(final String constraint)
+	{
+		return new EntitySelection(attributes, filter != null ? '(' + filter + ");" + constraint : constraint);
+	}
+
+	/**
+	 * Quotes a value for use in an RSQL query, so that it may contain reserved characters.
+	 */
+	public static String quote(final String value)
+	{
+		return '"' + value.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+	}
+
+	/**
+	 * @return whether an attribute of an entity is selected: the id attribute, a selected attribute, a part of a
+	 * selected compound attribute, or a compound attribute with a selected part
+	 */
+	public boolean includes(final Entity entity, final Attribute attribute)
+	{
+		if (attributes == null || attributes.contains(attribute.getName()) || attribute.isIdAttribute())
+		{
+			return true;
+		}
+		if (entity.getIdAttribute() != null && entity.getIdAttribute().getName().equals(attribute.getName()))
+		{
+			return true;
+		}
+		if (isPartOfSelected(entity.getAttributes(), attribute.getName(), false))
+		{
+			return true;
+		}
+		return DataType.COMPOUND.equals(attribute.getDataType()) && attribute.getParts()
+																			  .stream()
+																			  .anyMatch(part -> includes(entity, part));
+	}
+
+	/**
+	 * @return the names of the selected attributes that the entity does not have
+	 */
+	public Set<String> getUnknownAttributes(final Entity entity)
+	{
+		if (attributes == null)
+		{
+			return Collections.emptySet();
+		}
+		final Set<String> unknown = new LinkedHashSet<>(attributes);
+		removeNames(entity.getAttributes(), unknown);
+		return unknown;
+	}
+
+	/**
+	 * Looks for the named attribute among the attributes and their parts. The parts of compound attributes are
+	 * searched rather than looked up with {@link Attribute#getCompound()}, which not every source of metadata sets.
+	 *
+	 * @param selected whether the attributes are parts of a selected compound attribute
+	 * @return whether the named attribute is a part of a selected compound attribute
+	 */
+	private boolean isPartOfSelected(final Collection<Attribute> candidates, final String name,
+			final boolean selected)
+	{
+		for (final Attribute candidate : candidates)
+		{
+			if (selected && candidate.getName().equals(name))
+			{
+				return true;
+			}
+			if (DataType.COMPOUND.equals(candidate.getDataType()) && isPartOfSelected(candidate.getParts(), name,
+					selected || attributes.contains(candidate.getName())))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static void removeNames(final Collection<Attribute> candidates, final Set<String> names)
+	{
+		for (final Attribute candidate : candidates)
+		{
+			names.remove(candidate.getName());
+			removeNames(candidate.getParts(), names);
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return "EntitySelection{attributes=" + attributes + ", filter=" + filter + '}';
+	}
+}
@@ -20,10 +20,42 @@ public interface MolgenisClient extends AutoCloseable
 		streamEntityData(name, consumer, null);
 	}
 
-	void streamEntityData(final String name, final EntityConsumer consumer, Integer pageSize);
+	default void streamEntityData(final String name, final EntityConsumer consumer, Integer pageSize)
+	{
+		streamEntityData(name, consumer, pageSize, null);
+	}
+
+	/**
+	 * Streams the rows of an entity, sorted on the id attribute.
+	 *
+	 * @param from the checkpoint to continue from, or null to stream all rows
+	 */
+	default void streamEntityData(final String name, final EntityConsumer consumer, Integer pageSize,
+			Checkpoint from)
+	{
+		streamEntityData(name, consumer, pageSize, from, null);
+	}
+
+	/**
+	 * Streams the selected rows of an entity, sorted on the id attribute.
+	 *
+	 * @param from      the checkpoint to continue from, or null to stream all rows
+	 * @param selection the rows and attributes to stream, or null to stream all rows and attributes
+	 */
+	void streamEntityData(final String name, final EntityConsumer consumer, Integer pageSize, Checkpoint from,
+			EntitySelection selection);
 
 	Entity getEntity(final String name) throws IOException, URISyntaxException;
 
+	/**
+	 * @param attribute the attribute to get the largest value of
+	 * @param from      the smallest value to consider, or null to consider all values
+	 * @return the largest value of the attribute over the rows of the entity, or null if no row has a value from
+	 * the given value on
+	 */
+	String getMaxValue(final String name, final String attribute, final String from)
+			throws IOException, URISyntaxException;
+
 	void streamMetadata(final MetadataConsumer consumer, MolgenisVersion version) throws IncompleteMetadataException;
 
 	MetadataRepository getMetadata(MolgenisVersion version) throws IncompleteMetadataException;
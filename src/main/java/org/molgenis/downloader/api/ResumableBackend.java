@@ -0,0 +1,25 @@
+package org.molgenis.downloader.api;
+
+import java.io.IOException;
+
+/**
+ * A backend whose data stores can be continued by a later export, after the export that wrote them was interrupted.
+ */
+public interface ResumableBackend extends EMXBackend
+{
+	@Override
+	ResumableDataStore createDataStore(final String name) throws IOException;
+
+	@Override
+	default boolean isResumable()
+	{
+		return true;
+	}
+
+	/**
+	 * Opens an existing data store to append rows to. Everything written after the given position is discarded.
+	 *
+	 * @param position the position returned by {@link ResumableDataStore#sync()}
+	 */
+	ResumableDataStore resumeDataStore(final String name, final long position) throws IOException;
+}
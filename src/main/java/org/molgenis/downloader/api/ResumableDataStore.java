@@ -0,0 +1,16 @@
+package org.molgenis.downloader.api;
+
+import java.io.IOException;
+
+/**
+ * A data store of a {@link ResumableBackend}.
+ */
+public interface ResumableDataStore extends EMXDataStore
+{
+	/**
+	 * Writes the rows written so far through to storage, so that a resumed export can continue after them.
+	 *
+	 * @return the position after the last row, to pass to {@link ResumableBackend#resumeDataStore(String, long)}
+	 */
+	long sync() throws IOException;
+}
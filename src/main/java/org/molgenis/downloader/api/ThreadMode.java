@@ -0,0 +1,81 @@
+package org.molgenis.downloader.api;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Locale;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Determines the kind of threads that entities and pages are downloaded on.
+ */
+public enum ThreadMode
+{
+	/**
+	 * Daemon platform threads, each backed by an operating system thread.
+	 */
+	PLATFORM,
+
+	/**
+	 * Virtual threads, which are cheap enough to block on a request each, so that hundreds of requests can be waited
+	 * for at the same time. They need Java 21 or newer, on older runtimes platform threads are used instead.
+	 */
+	VIRTUAL;
+
+	private static final Logger LOG = LoggerFactory.getLogger(ThreadMode.class);
+
+	public static ThreadMode from(final String text)
+	{
+		return ThreadMode.valueOf(text.toUpperCase(Locale.ROOT));
+	}
+
+	/**
+	 * @return whether this runtime supports virtual threads
+	 */
+	public static boolean isVirtualSupported()
+	{
+		return createVirtualThreadFactory("probe-") != null;
+	}
+
+	/**
+	 * Creates a factory for threads of this kind.
+	 *
+	 * @param prefix the prefix of the thread names, followed by a sequence number
+	 */
+	public ThreadFactory newThreadFactory(final String prefix)
+	{
+		if (this == VIRTUAL)
+		{
+			final ThreadFactory factory = createVirtualThreadFactory(prefix);
+			if (factory != null)
+			{
+				return factory;
+			}
+			LOG.debug("Virtual threads are not supported, using platform threads for {}.", prefix);
+		}
+		return new ThreadFactoryBuilder().setNameFormat(prefix + "%d").setDaemon(true).build();
+	}
+
+	/**
+	 * Calls {@code Thread.ofVirtual().name(prefix, 0).factory()} by reflection, because the code is compiled for
+	 * Java 8.
+	 *
+	 * @return the factory, or null if virtual threads are not available
+	 */
+	private static ThreadFactory createVirtualThreadFactory(final String prefix)
+	{
+		try
+		{
+			final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+			return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+		}
+		catch (final ReflectiveOperationException | RuntimeException ex)
+		{
+			LOG.debug("Virtual threads are not available.", ex);
+			return null;
+		}
+	}
+}
@@ -113,40 +113,16 @@ public final class Attribute extends Metadata implements Comparable<Attribute>
 		return entityId != null ? entityId.equals(attribute.entityId) : attribute.entityId == null;
 	}
 
+	/**
+	 * Hashes only the name and data type, which are compared by {@link #equals} as well. They are set before an
+	 * attribute is added to a set, unlike the entity and references that a converter may update afterwards, and they
+	 * do not walk the referenced entity, tags, labels and compound of the attribute.
+	 */
 	@Override
 	public int hashCode()
 	{
-		int result = entityFullname != null ? entityFullname.hashCode() : 0;
-		result = 31 * result + (id != null ? id.hashCode() : 0);
-		result = 31 * result + (name != null ? name.hashCode() : 0);
+		int result = name != null ? name.hashCode() : 0;
 		result = 31 * result + (dataType != null ? dataType.hashCode() : 0);
-		result = 31 * result + (refEntity != null ? refEntity.hashCode() : 0);
-		result = 31 * result + (idAttribute ? 1 : 0);
-		result = 31 * result + (lookupAttribute ? 1 : 0);
-		result = 31 * result + (nillable ? 1 : 0);
-		result = 31 * result + (auto ? 1 : 0);
-		result = 31 * result + (visible ? 1 : 0);
-		result = 31 * result + (readOnly ? 1 : 0);
-		result = 31 * result + (unique ? 1 : 0);
-		result = 31 * result + (aggregateable ? 1 : 0);
-		result = 31 * result + (labelAttribute ? 1 : 0);
-		result = 31 * result + (enumOptions != null ? enumOptions.hashCode() : 0);
-		result = 31 * result + (expression != null ? expression.hashCode() : 0);
-		result = 31 * result + (label != null ? label.hashCode() : 0);
-		result = 31 * result + (description != null ? description.hashCode() : 0);
-		result = 31 * result + (visibleExpression != null ? visibleExpression.hashCode() : 0);
-		result = 31 * result + (validationExpression != null ? validationExpression.hashCode() : 0);
-		result = 31 * result + (defaultValue != null ? defaultValue.hashCode() : 0);
-		result = 31 * result + (orderBy != null ? orderBy.hashCode() : 0);
-		result = 31 * result + (mappedBy != null ? mappedBy.hashCode() : 0);
-		result = 31 * result + (maxLength != null ? maxLength.hashCode() : 0);
-		result = 31 * result + (rangeMin != null ? rangeMin.hashCode() : 0);
-		result = 31 * result + (rangeMax != null ? rangeMax.hashCode() : 0);
-		result = 31 * result + (tags != null ? tags.hashCode() : 0);
-		result = 31 * result + (labels != null ? labels.hashCode() : 0);
-		result = 31 * result + (descriptions != null ? descriptions.hashCode() : 0);
-		result = 31 * result + (compound != null ? compound.hashCode() : 0);
-		result = 31 * result + (entityId != null ? entityId.hashCode() : 0);
 		return result;
 	}
 
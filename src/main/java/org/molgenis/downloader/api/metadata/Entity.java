@@ -62,7 +62,6 @@ public class Entity extends Metadata
 	{
 		int hash = 5;
 		hash = 59 * hash + Objects.hashCode(this.fullName);
-		hash = 59 * hash + Objects.hashCode(this.pkg);
 		return hash;
 	}
 
@@ -0,0 +1,93 @@
+package org.molgenis.downloader.client;
+
+/**
+ * The page size of one stream of pages, adapted after every page so that a page takes about a target time to read.
+ * The size changes by at most a factor two per page, and is capped so that a page does not grow beyond
+ * {@link #MAX_PAGE_BYTES}.
+ */
+class AdaptivePageSize
+{
+	/**
+	 * The largest page size MOLGENIS accepts.
+	 */
+	static final int MAX_PAGE_SIZE = 10000;
+	static final int MIN_PAGE_SIZE = 10;
+
+	/**
+	 * The largest page to ask for, to bound the memory that prefetched and spooled pages take.
+	 */
+	static final long MAX_PAGE_BYTES = 16L * 1024 * 1024;
+
+	private final long targetMillis;
+	private int size;
+
+	/**
+	 * @param initialSize  the size of the first page
+	 * @param targetMillis the number of milliseconds a page should take to read
+	 */
+	AdaptivePageSize(final int initialSize, final long targetMillis)
+	{
+		if (targetMillis < 1)
+		{
+			throw new IllegalArgumentException("The target page time should be at least 1 millisecond");
+		}
+		this.targetMillis = targetMillis;
+		this.size = clamp(initialSize);
+	}
+
+	int get()
+	{
+		return size;
+	}
+
+	/**
+	 * Adapts the size to a page that was read. Pages with fewer rows than were asked for are the last page of the
+	 * stream, and say nothing about how long a full page takes.
+	 *
+	 * @param rows   the number of rows in the page
+	 * @param bytes  the number of bytes of the response body
+	 * @param millis the number of milliseconds it took to request and read the page
+	 */
+	void update(final int rows, final long bytes, final long millis)
+	{
+		if (rows < size)
+		{
+			return;
+		}
+		final double factor = Math.max(0.5, Math.min(2.0, (double) targetMillis / Math.max(1, millis)));
+		long next = Math.round(size * factor);
+		if (bytes > 0)
+		{
+			next = Math.min(next, MAX_PAGE_BYTES * rows / bytes);
+		}
+		size = clamp(next);
+	}
+
+	/**
+	 * Halves the size after a page timed out.
+	 *
+	 * @return false if the size cannot get any smaller
+	 */
+	boolean shrink()
+	{
+		if (!canShrink())
+		{
+			return false;
+		}
+		size = clamp(size / 2);
+		return true;
+	}
+
+	/**
+	 * @return whether the size can get any smaller
+	 */
+	boolean canShrink()
+	{
+		return size > MIN_PAGE_SIZE;
+	}
+
+	private static int clamp(final long size)
+	{
+		return (int) Math.max(MIN_PAGE_SIZE, Math.min(MAX_PAGE_SIZE, size));
+	}
+}
@@ -0,0 +1,102 @@
+package org.molgenis.downloader.client;
+
+import org.apache.http.HttpException;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.ResponseContentEncoding;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.protocol.BasicHttpContext;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Sends the requests that are not waited for, such as those for prefetched pages, on a non-blocking
+ * {@link CloseableHttpAsyncClient}, so that many of them can wait for their response at the same time without taking
+ * up a thread each. That client reads every response completely before it is handed over, and decompresses it if the
+ * server compressed it. Requests that are waited for are sent on a blocking client, so that their responses are
+ * parsed while they stream in.
+ */
+public class AsyncHttpTransport implements HttpTransport
+{
+	private final CloseableHttpAsyncClient client;
+	private final HttpClient blockingClient;
+
+	/**
+	 * @param client         the client to send the requests that are not waited for on, which is started now and
+	 *                       closed with this transport
+	 * @param blockingClient the client to send the requests that are waited for on, which is closed with this
+	 *                       transport if it is closeable
+	 */
+	public AsyncHttpTransport(final CloseableHttpAsyncClient client, final HttpClient blockingClient)
+	{
+		this.client = client;
+		this.blockingClient = blockingClient;
+		client.start();
+	}
+
+	/**
+	 * Sends the request on the blocking client, so that the response is parsed while it streams in instead of being
+	 * read into memory first.
+	 */
+	@Override
+	public HttpResponse execute(final HttpUriRequest request) throws IOException
+	{
+		return blockingClient.execute(request);
+	}
+
+	@Override
+	public CompletableFuture<HttpResponse> executeAsync(final HttpUriRequest request)
+	{
+		final CompletableFuture<HttpResponse> response = new CompletableFuture<>();
+		client.execute(request, new FutureCallback<HttpResponse>()
+		{
+			@Override
+			public void completed(final HttpResponse result)
+			{
+				try
+				{
+					// the client buffers the entity after its response interceptors have run, so decode it here
+					new ResponseContentEncoding().process(result, new BasicHttpContext());
+					response.complete(result);
+				}
+				catch (final HttpException | IOException ex)
+				{
+					response.completeExceptionally(ex);
+				}
+			}
+
+			@Override
+			public void failed(final Exception ex)
+			{
+				response.completeExceptionally(ex);
+			}
+
+			@Override
+			public void cancelled()
+			{
+				response.cancel(false);
+			}
+		});
+		return response;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		try
+		{
+			client.close();
+		}
+		finally
+		{
+			if (blockingClient instanceof Closeable)
+			{
+				((Closeable) blockingClient).close();
+			}
+		}
+	}
+}
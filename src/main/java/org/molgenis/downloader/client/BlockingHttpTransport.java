@@ -0,0 +1,91 @@
+package org.molgenis.downloader.client;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.molgenis.downloader.api.ThreadMode;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Sends requests on a blocking {@link HttpClient}. Requests that are sent without waiting for their response each
+ * take up a thread until the response arrives.
+ */
+public class BlockingHttpTransport implements HttpTransport
+{
+	private final HttpClient client;
+	private final ThreadMode threadMode;
+	private ExecutorService executor;
+
+	/**
+	 * @param client the client to send the requests on, which is closed with this transport if it is closeable
+	 */
+	public BlockingHttpTransport(final HttpClient client)
+	{
+		this(client, ThreadMode.PLATFORM);
+	}
+
+	/**
+	 * @param client     the client to send the requests on, which is closed with this transport if it is closeable
+	 * @param threadMode the kind of threads to wait for the responses of asynchronous requests on
+	 */
+	public BlockingHttpTransport(final HttpClient client, final ThreadMode threadMode)
+	{
+		this.client = client;
+		this.threadMode = threadMode;
+	}
+
+	@Override
+	public HttpResponse execute(final HttpUriRequest request) throws IOException
+	{
+		return client.execute(request);
+	}
+
+	@Override
+	public CompletableFuture<HttpResponse> executeAsync(final HttpUriRequest request)
+	{
+		final CompletableFuture<HttpResponse> response = new CompletableFuture<>();
+		getExecutor().execute(() ->
+		{
+			try
+			{
+				response.complete(client.execute(request));
+			}
+			catch (final IOException | RuntimeException ex)
+			{
+				response.completeExceptionally(ex);
+			}
+		});
+		return response;
+	}
+
+	private synchronized ExecutorService getExecutor()
+	{
+		if (executor == null)
+		{
+			executor = Executors.newCachedThreadPool(threadMode.newThreadFactory("http-request-"));
+		}
+		return executor;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		synchronized (this)
+		{
+			if (executor != null)
+			{
+				executor.shutdownNow();
+				executor = null;
+			}
+		}
+		if (client instanceof Closeable)
+		{
+			((Closeable) client).close();
+		}
+	}
+}
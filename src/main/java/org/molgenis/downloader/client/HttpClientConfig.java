@@ -0,0 +1,94 @@
+package org.molgenis.downloader.client;
+
+/**
+ * Connection settings for the {@link org.apache.http.client.HttpClient} that {@link HttpClientFactory} creates.
+ */
+public class HttpClientConfig
+{
+	public static final int DEFAULT_KEEP_ALIVE = 30;
+
+	private boolean insecure;
+	private int maxConnections = 2;
+	private int keepAlive = DEFAULT_KEEP_ALIVE;
+	private boolean compression = true;
+	private int socketTimeout;
+
+	public boolean isInsecure()
+	{
+		return insecure;
+	}
+
+	/**
+	 * @param insecure whether to ignore SSL certificate chain errors and hostname mismatches
+	 */
+	public void setInsecure(final boolean insecure)
+	{
+		this.insecure = insecure;
+	}
+
+	public int getMaxConnections()
+	{
+		return maxConnections;
+	}
+
+	/**
+	 * @param maxConnections the number of connections to keep open to the server, which should be at least the number
+	 *                       of requests that are made at the same time
+	 */
+	public void setMaxConnections(final int maxConnections)
+	{
+		if (maxConnections < 1)
+		{
+			throw new IllegalArgumentException("The number of connections should be at least 1");
+		}
+		this.maxConnections = maxConnections;
+	}
+
+	public int getKeepAlive()
+	{
+		return keepAlive;
+	}
+
+	/**
+	 * @param keepAlive the number of seconds to keep an idle connection open, when the server does not say otherwise
+	 */
+	public void setKeepAlive(final int keepAlive)
+	{
+		if (keepAlive < 1)
+		{
+			throw new IllegalArgumentException("The keep-alive time should be at least 1 second");
+		}
+		this.keepAlive = keepAlive;
+	}
+
+	public boolean isCompression()
+	{
+		return compression;
+	}
+
+	/**
+	 * @param compression whether to ask the server to compress its responses with gzip or deflate
+	 */
+	public void setCompression(final boolean compression)
+	{
+		this.compression = compression;
+	}
+
+	public int getSocketTimeout()
+	{
+		return socketTimeout;
+	}
+
+	/**
+	 * @param socketTimeout the number of seconds to wait for data from the server before a request fails, 0 to wait
+	 *                      forever
+	 */
+	public void setSocketTimeout(final int socketTimeout)
+	{
+		if (socketTimeout < 0)
+		{
+			throw new IllegalArgumentException("The socket timeout cannot be negative");
+		}
+		this.socketTimeout = socketTimeout;
+	}
+}
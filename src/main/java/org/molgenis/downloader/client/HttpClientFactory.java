@@ -1,8 +1,29 @@
 package org.molgenis.downloader.client;
 
-import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.protocol.RequestAcceptEncoding;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.reactor.IOReactorException;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManager;
@@ -11,25 +32,118 @@ import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
 
 public class HttpClientFactory
 {
+	/**
+	 * The number of milliseconds a pooled connection may be idle before it is checked before reuse.
+	 */
+	private static final int VALIDATE_AFTER_INACTIVITY = 2000;
 
-	public static HttpClient create(final boolean insecure) throws KeyManagementException, NoSuchAlgorithmException
+	public static CloseableHttpClient create(final boolean insecure)
+			throws KeyManagementException, NoSuchAlgorithmException
 	{
-		HttpClient client;
-		if (insecure)
+		final HttpClientConfig config = new HttpClientConfig();
+		config.setInsecure(insecure);
+		return create(config);
+	}
+
+	/**
+	 * Creates a client with a connection pool sized to the given number of connections. Idle connections are kept
+	 * alive for reuse and closed in the background once they expire.
+	 */
+	public static CloseableHttpClient create(final HttpClientConfig config)
+			throws KeyManagementException, NoSuchAlgorithmException
+	{
+		final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(
+				createSocketFactoryRegistry(config.isInsecure()));
+		connectionManager.setMaxTotal(config.getMaxConnections());
+		connectionManager.setDefaultMaxPerRoute(config.getMaxConnections());
+		connectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY);
+
+		final HttpClientBuilder builder = HttpClients.custom()
+													 .setConnectionManager(connectionManager)
+													 .setKeepAliveStrategy(createKeepAliveStrategy(config))
+													 .setDefaultRequestConfig(createRequestConfig(config))
+													 .evictExpiredConnections()
+													 .evictIdleConnections(config.getKeepAlive(), TimeUnit.SECONDS);
+		if (!config.isCompression())
 		{
-			client = createInsecureHttpClient();
+			builder.disableContentCompression();
 		}
-		else
+		return builder.build();
+	}
+
+	/**
+	 * Creates a non-blocking client with a connection pool sized to the given number of connections. The client only
+	 * asks for compressed responses, they are decompressed by {@link AsyncHttpTransport}.
+	 */
+	public static CloseableHttpAsyncClient createAsync(final HttpClientConfig config)
+			throws KeyManagementException, NoSuchAlgorithmException, IOReactorException
+	{
+		final PoolingNHttpClientConnectionManager connectionManager = new PoolingNHttpClientConnectionManager(
+				new DefaultConnectingIOReactor(IOReactorConfig.DEFAULT),
+				createSessionStrategyRegistry(config.isInsecure()));
+		connectionManager.setMaxTotal(config.getMaxConnections());
+		connectionManager.setDefaultMaxPerRoute(config.getMaxConnections());
+
+		final HttpAsyncClientBuilder builder = HttpAsyncClients.custom()
+															   .setConnectionManager(connectionManager)
+															   .setKeepAliveStrategy(createKeepAliveStrategy(config))
+															   .setDefaultRequestConfig(createRequestConfig(config));
+		if (config.isCompression())
 		{
-			client = HttpClients.createDefault();
+			builder.addInterceptorLast(new RequestAcceptEncoding());
 		}
-		return client;
+		return builder.build();
+	}
+
+	private static RequestConfig createRequestConfig(final HttpClientConfig config)
+	{
+		return RequestConfig.custom()
+							.setSocketTimeout((int) TimeUnit.SECONDS.toMillis(config.getSocketTimeout()))
+							.build();
 	}
 
-	private static HttpClient createInsecureHttpClient() throws KeyManagementException, NoSuchAlgorithmException
+	/**
+	 * Keeps connections alive as long as the server allows, but never longer than the configured keep-alive time.
+	 */
+	private static ConnectionKeepAliveStrategy createKeepAliveStrategy(final HttpClientConfig config)
+	{
+		final long maxKeepAlive = TimeUnit.SECONDS.toMillis(config.getKeepAlive());
+		return (response, context) ->
+		{
+			final long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+			return keepAlive > 0 ? Math.min(keepAlive, maxKeepAlive) : maxKeepAlive;
+		};
+	}
+
+	private static Registry<ConnectionSocketFactory> createSocketFactoryRegistry(final boolean insecure)
+			throws KeyManagementException, NoSuchAlgorithmException
+	{
+		final SSLConnectionSocketFactory sslSocketFactory =
+				insecure ? new SSLConnectionSocketFactory(createInsecureSSLContext(), NoopHostnameVerifier.INSTANCE) :
+						SSLConnectionSocketFactory.getSocketFactory();
+		return RegistryBuilder.<ConnectionSocketFactory>create()
+							  .register("http", PlainConnectionSocketFactory.getSocketFactory())
+							  .register("https", sslSocketFactory)
+							  .build();
+	}
+
+	private static Registry<SchemeIOSessionStrategy> createSessionStrategyRegistry(final boolean insecure)
+			throws KeyManagementException, NoSuchAlgorithmException
+	{
+		final SSLIOSessionStrategy sslStrategy =
+				insecure ? new SSLIOSessionStrategy(createInsecureSSLContext(), NoopHostnameVerifier.INSTANCE) :
+						SSLIOSessionStrategy.getDefaultStrategy();
+		return RegistryBuilder.<SchemeIOSessionStrategy>create()
+							  .register("http", NoopIOSessionStrategy.INSTANCE)
+							  .register("https", sslStrategy)
+							  .build();
+	}
+
+	private static SSLContext createInsecureSSLContext() throws KeyManagementException, NoSuchAlgorithmException
 	{
 		SSLContext sslContext = SSLContext.getInstance("SSL");
 		// set up a TrustManager that trusts everything
@@ -51,11 +165,7 @@ public class HttpClientFactory
 			{
 			}
 		} }, new SecureRandom());
-
-		return HttpClients.custom()
-						  .setSSLContext(sslContext)
-						  .setSSLHostnameVerifier(NoopHostnameVerifier.INSTANCE)
-						  .build();
+		return sslContext;
 	}
 
 }
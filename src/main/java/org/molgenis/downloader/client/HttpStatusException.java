@@ -0,0 +1,40 @@
+package org.molgenis.downloader.client;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the server answers a request with a status other than 2xx. Only 429 Too Many Requests and the 5xx
+ * server errors may succeed later, see {@link #isRetryable()}.
+ */
+public class HttpStatusException extends IOException
+{
+	private static final long serialVersionUID = 1L;
+
+	private final int statusCode;
+	private final Long retryAfterMillis;
+
+	/**
+	 * @param retryAfterMillis the number of milliseconds the server asked to wait with Retry-After, or null
+	 */
+	public HttpStatusException(final String message, final int statusCode, final Long retryAfterMillis)
+	{
+		super(message);
+		this.statusCode = statusCode;
+		this.retryAfterMillis = retryAfterMillis;
+	}
+
+	public int getStatusCode()
+	{
+		return statusCode;
+	}
+
+	public Long getRetryAfterMillis()
+	{
+		return retryAfterMillis;
+	}
+
+	public boolean isRetryable()
+	{
+		return statusCode == 429 || statusCode >= 500;
+	}
+}
@@ -0,0 +1,32 @@
+package org.molgenis.downloader.client;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Sends the requests of {@link MolgenisRestApiClient} to the server, either on a blocking or on a non-blocking
+ * HTTP client.
+ */
+public interface HttpTransport extends AutoCloseable
+{
+	/**
+	 * Sends a request and waits for its response.
+	 */
+	HttpResponse execute(final HttpUriRequest request) throws IOException;
+
+	/**
+	 * Sends a request without waiting for its response.
+	 *
+	 * @return the response, or a future that fails with the {@link IOException} of the request
+	 */
+	CompletableFuture<HttpResponse> executeAsync(final HttpUriRequest request);
+
+	@Override
+	default void close() throws IOException
+	{
+
+	}
+}
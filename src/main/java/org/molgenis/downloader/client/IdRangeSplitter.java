@@ -0,0 +1,150 @@
+package org.molgenis.downloader.client;
+
+import org.molgenis.downloader.api.metadata.DataType;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Splits the ids between the first and the last id of an entity into ranges of roughly equal width. Numeric ids are
+ * split arithmetically. String ids are split lexicographically when they consist of digits and letters of a single
+ * case, because for those the order of the database is the same as the order of the characters.
+ */
+final class IdRangeSplitter
+{
+	private static final String UPPER_CASE = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+	private static final String LOWER_CASE = "0123456789abcdefghijklmnopqrstuvwxyz";
+
+	/**
+	 * The maximum number of characters after the common prefix that are taken into account.
+	 */
+	private static final int MAX_DIGITS = 16;
+
+	private IdRangeSplitter()
+	{
+	}
+
+	/**
+	 * @param type  the type of the id attribute
+	 * @param first the smallest id
+	 * @param last  the largest id
+	 * @param parts the number of ranges to split into
+	 * @return the ascending boundaries between the ranges, fewer than parts - 1 if the ids cannot be split that fine,
+	 * or none at all if the ids cannot be split
+	 */
+	static List<String> split(final DataType type, final String first, final String last, final int parts)
+	{
+		if (parts < 2 || first.equals(last))
+		{
+			return Collections.emptyList();
+		}
+		if (type.isNumericType())
+		{
+			return splitNumeric(new BigInteger(first), new BigInteger(last), parts);
+		}
+		if (matches(first, UPPER_CASE) && matches(last, UPPER_CASE))
+		{
+			return splitLexicographic(first, last, parts, UPPER_CASE);
+		}
+		if (matches(first, LOWER_CASE) && matches(last, LOWER_CASE))
+		{
+			return splitLexicographic(first, last, parts, LOWER_CASE);
+		}
+		return Collections.emptyList();
+	}
+
+	private static List<String> splitNumeric(final BigInteger first, final BigInteger last, final int parts)
+	{
+		final List<String> boundaries = new ArrayList<>();
+		for (final BigInteger boundary : interpolate(first, last, parts))
+		{
+			boundaries.add(boundary.toString());
+		}
+		return boundaries;
+	}
+
+	private static List<String> splitLexicographic(final String first, final String last, final int parts,
+			final String alphabet)
+	{
+		int prefixLength = 0;
+		while (prefixLength < first.length() && prefixLength < last.length()
+				&& first.charAt(prefixLength) == last.charAt(prefixLength))
+		{
+			prefixLength++;
+		}
+		final String prefix = first.substring(0, prefixLength);
+		final int digits = Math.min(MAX_DIGITS, Math.max(first.length(), last.length()) - prefixLength);
+
+		final List<String> boundaries = new ArrayList<>();
+		for (final BigInteger boundary : interpolate(toNumber(first, prefixLength, digits, alphabet),
+				toNumber(last, prefixLength, digits, alphabet), parts))
+		{
+			boundaries.add(prefix + toDigits(boundary, digits, alphabet));
+		}
+		return boundaries;
+	}
+
+	/**
+	 * @return the distinct values strictly between first and last that divide the interval into equal parts
+	 */
+	private static List<BigInteger> interpolate(final BigInteger first, final BigInteger last, final int parts)
+	{
+		final List<BigInteger> values = new ArrayList<>();
+		final BigInteger width = last.subtract(first);
+		final BigInteger divisor = BigInteger.valueOf(parts);
+		BigInteger previous = first;
+		for (int part = 1; part < parts; part++)
+		{
+			final BigInteger value = first.add(width.multiply(BigInteger.valueOf(part)).divide(divisor));
+			if (value.compareTo(previous) > 0 && value.compareTo(last) < 0)
+			{
+				values.add(value);
+				previous = value;
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Reads the characters after the prefix as a number in the base of the alphabet, padding short ids with the
+	 * smallest digit.
+	 */
+	private static BigInteger toNumber(final String id, final int offset, final int digits, final String alphabet)
+	{
+		final BigInteger base = BigInteger.valueOf(alphabet.length());
+		BigInteger number = BigInteger.ZERO;
+		for (int index = offset; index < offset + digits; index++)
+		{
+			final int digit = index < id.length() ? alphabet.indexOf(id.charAt(index)) : 0;
+			number = number.multiply(base).add(BigInteger.valueOf(digit));
+		}
+		return number;
+	}
+
+	private static String toDigits(BigInteger number, final int digits, final String alphabet)
+	{
+		final BigInteger base = BigInteger.valueOf(alphabet.length());
+		final char[] chars = new char[digits];
+		for (int index = digits - 1; index >= 0; index--)
+		{
+			final BigInteger[] division = number.divideAndRemainder(base);
+			chars[index] = alphabet.charAt(division[1].intValue());
+			number = division[0];
+		}
+		return new String(chars);
+	}
+
+	private static boolean matches(final String id, final String alphabet)
+	{
+		for (int index = 0; index < id.length(); index++)
+		{
+			if (alphabet.indexOf(id.charAt(index)) < 0)
+			{
+				return false;
+			}
+		}
+		return !id.isEmpty();
+	}
+}
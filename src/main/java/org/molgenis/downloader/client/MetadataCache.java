@@ -0,0 +1,182 @@
+package org.molgenis.downloader.client;
+
+import com.google.common.hash.Hashing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Keeps the rows of the metadata repositories of a server in a compressed binary file per server and version, so
+ * that the metadata does not have to be downloaded again while it has not changed. A cached entry is used only if its
+ * fingerprint matches the one the server gives now, and it is not older than the maximum age. The rows are cached
+ * rather than the converted metadata, which is a graph of objects that is quick to rebuild from them.
+ */
+public class MetadataCache
+{
+	private static final Logger LOG = LoggerFactory.getLogger(MetadataCache.class);
+
+	public static final int DEFAULT_MAX_AGE_HOURS = 24;
+
+	private static final int FORMAT = 1;
+	private static final String EXTENSION = ".metadata";
+
+	private final Path directory;
+	private final long maxAgeMillis;
+
+	/**
+	 * @param directory    the directory to keep the cached metadata in
+	 * @param maxAgeMillis the age after which the cached metadata is downloaded again, even if it seems unchanged
+	 */
+	public MetadataCache(final Path directory, final long maxAgeMillis)
+	{
+		if (maxAgeMillis < 0)
+		{
+			throw new IllegalArgumentException("The maximum age cannot be negative");
+		}
+		this.directory = directory;
+		this.maxAgeMillis = maxAgeMillis;
+	}
+
+	/**
+	 * @param key         the server and version the metadata belongs to
+	 * @param fingerprint a summary of the metadata on the server that changes when the metadata does
+	 * @return the rows of every metadata repository, or null if they are not cached, changed or too old
+	 */
+	List<List<Map<String, String>>> load(final String key, final String fingerprint)
+	{
+		final Path path = pathFor(key);
+		if (!Files.exists(path))
+		{
+			return null;
+		}
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new GZIPInputStream(Files.newInputStream(path)))))
+		{
+			if (in.readInt() != FORMAT || !key.equals(readString(in)) || !fingerprint.equals(readString(in)))
+			{
+				LOG.info("The metadata on the server has changed since it was cached.");
+				return null;
+			}
+			if (System.currentTimeMillis() - in.readLong() > maxAgeMillis)
+			{
+				LOG.info("The cached metadata is older than the maximum age.");
+				return null;
+			}
+			final int repositories = in.readInt();
+			final List<List<Map<String, String>>> result = new ArrayList<>(repositories);
+			for (int repository = 0; repository < repositories; repository++)
+			{
+				final int size = in.readInt();
+				final List<Map<String, String>> rows = new ArrayList<>(size);
+				for (int row = 0; row < size; row++)
+				{
+					rows.add(readRow(in));
+				}
+				result.add(rows);
+			}
+			return result;
+		}
+		catch (final IOException | RuntimeException ex)
+		{
+			LOG.warn("Could not read the cached metadata from {}, downloading it instead.", path, ex);
+			return null;
+		}
+	}
+
+	/**
+	 * Replaces the cached metadata of the server and version. Failures are logged, the metadata is then downloaded
+	 * again next time.
+	 */
+	void store(final String key, final String fingerprint, final List<List<Map<String, String>>> repositories)
+	{
+		final Path path = pathFor(key);
+		final Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+		try
+		{
+			Files.createDirectories(directory);
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(temp)))))
+			{
+				out.writeInt(FORMAT);
+				writeString(out, key);
+				writeString(out, fingerprint);
+				out.writeLong(System.currentTimeMillis());
+				out.writeInt(repositories.size());
+				for (final List<Map<String, String>> rows : repositories)
+				{
+					out.writeInt(rows.size());
+					for (final Map<String, String> row : rows)
+					{
+						writeRow(out, row);
+					}
+				}
+			}
+			Files.move(temp, path, REPLACE_EXISTING, ATOMIC_MOVE);
+		}
+		catch (final IOException ex)
+		{
+			LOG.warn("Could not cache the metadata in {}.", path, ex);
+		}
+	}
+
+	private Path pathFor(final String key)
+	{
+		return directory.resolve(Hashing.sha256().hashString(key, UTF_8) + EXTENSION);
+	}
+
+	private static Map<String, String> readRow(final DataInputStream in) throws IOException
+	{
+		final int size = in.readInt();
+		final Map<String, String> row = new HashMap<>(size * 2);
+		for (int column = 0; column < size; column++)
+		{
+			row.put(readString(in), readString(in));
+		}
+		return row;
+	}
+
+	private static void writeRow(final DataOutputStream out, final Map<String, String> row) throws IOException
+	{
+		out.writeInt(row.size());
+		for (final Map.Entry<String, String> column : row.entrySet())
+		{
+			writeString(out, column.getKey());
+			writeString(out, column.getValue());
+		}
+	}
+
+	/**
+	 * Reads a string written by {@link #writeString}, which unlike {@link DataInputStream#readUTF} has no length
+	 * limit.
+	 */
+	private static String readString(final DataInputStream in) throws IOException
+	{
+		final byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, UTF_8);
+	}
+
+	private static void writeString(final DataOutputStream out, final String value) throws IOException
+	{
+		final byte[] bytes = value.getBytes(UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+}
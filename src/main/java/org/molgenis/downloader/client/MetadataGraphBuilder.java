@@ -0,0 +1,84 @@
+package org.molgenis.downloader.client;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.molgenis.downloader.api.metadata.Attribute;
+import org.molgenis.downloader.api.metadata.DataType;
+import org.molgenis.downloader.api.metadata.Entity;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Builds entities from the metadata in REST API v2 responses. A referenced entity is described the same way in every
+ * response, by just its id and label attributes, so it is built once and shared by every attribute that refers to it,
+ * in this response and the next ones, instead of being built again for every reference. An entity that refers to
+ * itself gets such a shared description too, so that the entities stay a tree that can be compared with equals.
+ */
+final class MetadataGraphBuilder
+{
+	private final ConcurrentMap<String, Entity> refEntities = new ConcurrentHashMap<>();
+
+	Entity entityFromJSON(final JSONObject metadata) throws JSONException
+	{
+		final Entity ent = new Entity(metadata.getString("name"));
+		final String idAttribute = metadata.getString("idAttribute");
+		final JSONArray attributes = metadata.getJSONArray("attributes");
+		attributes.iterator().forEachRemaining((Object object) ->
+		{
+			final JSONObject attributeMetadata = (JSONObject) object;
+			final Attribute attribute = attributeFromJSON(ent, attributeMetadata);
+			ent.addAttribute(attribute);
+			if (idAttribute.equals(attribute.getName()))
+			{
+				ent.setIdAttribute(attribute);
+			}
+		});
+		return ent;
+	}
+
+	private Entity refEntityFromJSON(final JSONObject metadata) throws JSONException
+	{
+		final Entity cached = refEntities.get(metadata.getString("name"));
+		if (cached != null)
+		{
+			return cached;
+		}
+		final Entity entity = entityFromJSON(metadata);
+		final Entity raced = refEntities.putIfAbsent(entity.getFullName(), entity);
+		return raced != null ? raced : entity;
+	}
+
+	private Attribute attributeFromJSON(final Entity entity, final JSONObject meta) throws JSONException
+	{
+		final DataType type = DataType.valueOf(meta.getString("fieldType"));
+		final String name = meta.getString("name");
+		Attribute att = new Attribute(name);
+		att.setEntityFullname(entity.getFullName());
+		att.setName(name);
+		att.setDataType(type);
+
+		if (DataType.COMPOUND.equals(type))
+		{
+			final JSONArray parts = meta.getJSONArray("attributes");
+			parts.forEach(part ->
+			{
+				final JSONObject partMeta = (JSONObject) part;
+				att.addPart(attributeFromJSON(entity, partMeta));
+			});
+		}
+		else
+		{
+			final boolean nillable = meta.getBoolean("nillable");
+			att.setNilleble(nillable);
+			att.setAuto(meta.optBoolean("auto"));
+			if (type.isReferenceType())
+			{
+				final JSONObject refEntity = meta.getJSONObject("refEntity");
+				att.setRefEntity(refEntityFromJSON(refEntity));
+			}
+		}
+		return att;
+	}
+}
@@ -1,12 +1,17 @@
 package org.molgenis.downloader.client;
 
+import com.google.common.io.CountingInputStream;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.http.Header;
 import org.apache.http.HttpResponse;
+import org.apache.http.NameValuePair;
 import org.apache.http.ParseException;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.client.utils.URIBuilder;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.util.EntityUtils;
 import org.json.JSONArray;
@@ -14,38 +19,211 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.molgenis.downloader.api.*;
 import org.molgenis.downloader.api.metadata.Attribute;
-import org.molgenis.downloader.api.metadata.DataType;
 import org.molgenis.downloader.api.metadata.Entity;
 import org.molgenis.downloader.api.metadata.MolgenisVersion;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.naming.AuthenticationException;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.io.Reader;
+import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
+import static java.util.Arrays.asList;
 import static org.molgenis.downloader.api.metadata.MolgenisVersion.*;
 
 public class MolgenisRestApiClient implements MolgenisClient
 {
 	private static final Logger LOG = LoggerFactory.getLogger(MolgenisRestApiClient.class);
 
-	private final HttpClient client;
+	/**
+	 * The number of rows in a page when no page size is given.
+	 */
+	private static final int DEFAULT_PAGE_SIZE = 100;
+
+	private final HttpTransport transport;
 	private final WriteableMetadataRepository repository = new MetadataRepositoryImpl();
 	private MetadataConverter converter;
 	private final URI uri;
 	private String token;
+	private PagingMode pagingMode = PagingMode.NEXT_HREF;
+	private int prefetchPages;
+	private int partitions = 1;
+	private boolean orderedPartitions = true;
+	private ThreadMode threadMode = ThreadMode.PLATFORM;
+	private Semaphore requests;
+	private long targetPageMillis;
+	private RetryPolicy retryPolicy = RetryPolicy.NONE;
+	private MetadataCache metadataCache;
+	private boolean projection;
+	private final MetadataGraphBuilder graphBuilder = new MetadataGraphBuilder();
+	private final ConcurrentMap<String, Entity> entities = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, RowExtractionPlan> plans = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, String> projections = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, String> filters = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, AtomicInteger> retryCounts = new ConcurrentHashMap<>();
+	private ExecutorService executor;
 
 	public MolgenisRestApiClient(final HttpClient client, final URI uri)
 	{
-		this.client = client;
+		this(new BlockingHttpTransport(client), uri);
+	}
+
+	/**
+	 * @param transport the transport to send the requests on, which is closed with this client
+	 */
+	public MolgenisRestApiClient(final HttpTransport transport, final URI uri)
+	{
+		this.transport = Objects.requireNonNull(transport);
 		this.uri = uri;
 	}
 
+	public void setPagingMode(final PagingMode pagingMode)
+	{
+		this.pagingMode = Objects.requireNonNull(pagingMode);
+	}
+
+	/**
+	 * Sets the number of pages that are fetched and parsed on a background thread while the current page is being
+	 * consumed. With {@link PagingMode#NEXT_HREF} and {@link PagingMode#KEYSET} at most one page can be fetched ahead,
+	 * because the URL of a page is only known once the previous page is parsed.
+	 *
+	 * @param prefetchPages the maximum number of pages to fetch ahead, 0 to disable prefetching
+	 */
+	public void setPrefetchPages(final int prefetchPages)
+	{
+		if (prefetchPages < 0)
+		{
+			throw new IllegalArgumentException("The number of pages to prefetch cannot be negative");
+		}
+		this.prefetchPages = prefetchPages;
+	}
+
+	/**
+	 * Sets the number of id ranges that an entity is split into to download the ranges concurrently. Entities with
+	 * ids that cannot be split, or that fit in a single page, are downloaded in one stream.
+	 *
+	 * @param partitions the number of id ranges, 1 to download every entity in one stream
+	 */
+	public void setPartitions(final int partitions)
+	{
+		if (partitions < 1)
+		{
+			throw new IllegalArgumentException("The number of partitions should be at least 1");
+		}
+		this.partitions = partitions;
+	}
+
+	/**
+	 * @param orderedPartitions whether the rows of a partitioned entity are consumed in id order, which requires the
+	 *                          ranges after the first to be kept in temporary files until it is their turn, or in the
+	 *                          order in which the pages arrive
+	 */
+	public void setOrderedPartitions(final boolean orderedPartitions)
+	{
+		this.orderedPartitions = orderedPartitions;
+	}
+
+	/**
+	 * @param threadMode the kind of threads to fetch pages and id ranges on
+	 */
+	public void setThreadMode(final ThreadMode threadMode)
+	{
+		this.threadMode = Objects.requireNonNull(threadMode);
+	}
+
+	/**
+	 * Limits the number of data requests that are sent to the server at the same time, over all entities, prefetched
+	 * pages and id ranges. A request counts until its response is read completely.
+	 *
+	 * @param concurrency the maximum number of requests at the same time
+	 */
+	public void setConcurrency(final int concurrency)
+	{
+		if (concurrency < 1)
+		{
+			throw new IllegalArgumentException("The concurrency should be at least 1");
+		}
+		this.requests = new Semaphore(concurrency, true);
+	}
+
+	/**
+	 * Adapts the page size of every stream of pages that is read one page after another, so that a page takes about
+	 * the given time to read. The page size given to {@link #streamEntityData} is used for the first page. Pages that
+	 * are prefetched keep the given page size.
+	 *
+	 * @param targetPageMillis the number of milliseconds a page should take, 0 to keep the page size fixed
+	 */
+	public void setTargetPageMillis(final long targetPageMillis)
+	{
+		if (targetPageMillis < 0)
+		{
+			throw new IllegalArgumentException("The target page time cannot be negative");
+		}
+		this.targetPageMillis = targetPageMillis;
+	}
+
+	/**
+	 * Sets whether to ask the server for only the attributes that are written, with an 'attrs' parameter. Referenced
+	 * entities are then requested with just their id, instead of being expanded into nested objects.
+	 */
+	public void setProjection(final boolean projection)
+	{
+		this.projection = projection;
+	}
+
+	/**
+	 * @param retryPolicy when to send a GET request again after it failed
+	 */
+	public void setRetryPolicy(final RetryPolicy retryPolicy)
+	{
+		this.retryPolicy = Objects.requireNonNull(retryPolicy);
+	}
+
+	/**
+	 * @param metadataCache where to keep the metadata between runs, or null to always download it
+	 */
+	public void setMetadataCache(final MetadataCache metadataCache)
+	{
+		this.metadataCache = metadataCache;
+	}
+
+	/**
+	 * @return the number of requests that were sent again, per entity
+	 */
+	public Map<String, Integer> getRetryCounts()
+	{
+		final Map<String, Integer> counts = new TreeMap<>();
+		retryCounts.forEach((name, count) -> counts.put(name, count.get()));
+		return counts;
+	}
+
 	@Override
 	public final void login(final String username, final String password, final Integer socketTimeout)
 			throws AuthenticationException
@@ -66,11 +244,18 @@ public class MolgenisRestApiClient implements MolgenisClient
 			request.setEntity(new StringEntity(login.toString()));
 			request.setConfig(requestConfigBuilder.build());
 
-			final HttpResponse result = client.execute(request);
-			if (result.getStatusLine().getStatusCode() == 200)
+			final HttpResponse result = transport.execute(request);
+			try
 			{
-				response = new JSONObject(EntityUtils.toString(result.getEntity()));
-				token = response.getString("token");
+				if (result.getStatusLine().getStatusCode() == 200)
+				{
+					response = new JSONObject(EntityUtils.toString(result.getEntity()));
+					token = response.getString("token");
+				}
+			}
+			finally
+			{
+				release(result);
 			}
 		}
 		catch (final JSONException | IOException | URISyntaxException ex)
@@ -94,7 +279,15 @@ public class MolgenisRestApiClient implements MolgenisClient
 		}
 		try
 		{
-			return client.execute(request).getStatusLine().getStatusCode() == 200;
+			final HttpResponse result = transport.execute(request);
+			try
+			{
+				return result.getStatusLine().getStatusCode() == 200;
+			}
+			finally
+			{
+				release(result);
+			}
 		}
 		catch (IOException ex)
 		{
@@ -121,51 +314,801 @@ public class MolgenisRestApiClient implements MolgenisClient
 		return version;
 	}
 
+	/**
+	 * The metadata of an entity is requested once and kept, so that the caller that writes an entity and
+	 * {@link #streamEntityData} do not both request it.
+	 */
 	@Override
 	public Entity getEntity(final String name) throws IOException, URISyntaxException
 	{
+		final Entity cached = entities.get(name);
+		if (cached != null)
+		{
+			return cached;
+		}
 		final JSONObject json = getJsonDataFromUrl(uri + "/api/v2/" + name + "?num=1");
 		final JSONObject meta = json.getJSONObject("meta");
-		return entityFromJSON(meta);
+		final Entity entity = graphBuilder.entityFromJSON(meta);
+		final Entity raced = entities.putIfAbsent(name, entity);
+		return raced != null ? raced : entity;
+	}
+
+	@Override
+	public String getMaxValue(final String name, final String attribute, final String from)
+			throws IOException, URISyntaxException
+	{
+		final URIBuilder builder = new URIBuilder(uri + "/api/v2/" + name).addParameter("num", "1")
+																			.addParameter("sort", attribute + ":desc")
+																			.addParameter("attrs", attribute);
+		if (from != null)
+		{
+			builder.addParameter("q", attribute + "=ge=" + quoteRsql(from));
+		}
+		final JSONArray items = getJsonDataFromUrl(builder.build().toString()).getJSONArray("items");
+		if (items.length() == 0 || items.getJSONObject(0).isNull(attribute))
+		{
+			return null;
+		}
+		return items.getJSONObject(0).get(attribute).toString();
 	}
 
 	@Override
-	public final void streamEntityData(final String entityName, final EntityConsumer consumer, Integer pageSize)
+	public final void streamEntityData(final String entityName, final EntityConsumer consumer, Integer pageSize,
+			final Checkpoint from, final EntitySelection selection)
 	{
 		LOG.info("Retrieving {}...", entityName);
 		try
 		{
 			// Fetch ID attribute
-			String uniqueSortingAttribute = getEntity(entityName).getIdAttribute().getName();
+			final Entity entity = getEntity(entityName);
+			final Attribute idAttribute = entity.getIdAttribute();
+			// the pages are extracted with this plan, instead of one created from the metadata in the first page
+			final RowExtractionPlan plan = RowExtractionPlan.create(entity, selection);
+			plans.put(entityName, plan);
+			if (projection || selection != null && selection.getAttributes() != null)
+			{
+				projections.put(entityName, plan.getProjection());
+			}
+			else
+			{
+				projections.remove(entityName);
+			}
+			if (selection != null && selection.getFilter() != null)
+			{
+				LOG.info("Retrieving the rows of {} that match {}...", entityName, selection.getFilter());
+				filters.put(entityName, selection.getFilter());
+			}
+			else
+			{
+				filters.remove(entityName);
+			}
+			String uniqueSortingAttribute = idAttribute.getName();
+			if (partitions > 1 && streamPartitions(entityName, idAttribute, consumer, pageSize, from))
+			{
+				return;
+			}
+
+			if (from != null && from.getLastId() != null)
+			{
+				// rows added or removed before the last id since the checkpoint do not shift the rows after it, as
+				// they would with an offset, so every page is restricted to the rows after it
+				LOG.info("Resuming {} after id {}...", entityName, from.getLastId());
+				final String after = uniqueSortingAttribute + "=gt=" + quoteRsql(from.getLastId());
+				final String filter = filters.get(entityName);
+				filters.put(entityName, filter != null ? '(' + filter + ");" + after : after);
+			}
 
 			// Fetch with a sort on ID attribute
 			String downloadUrl = uri + "/api/v2/" + entityName;
 			downloadUrl += pageSize != null ? "?num=" + pageSize + "&sort=" + uniqueSortingAttribute + ":asc" : "?sort=" + uniqueSortingAttribute + ":asc";
-			JSONObject  json = getJsonDataFromUrl(downloadUrl);
-			final Entity entity = entityFromJSON(json.getJSONObject("meta"));
+			downloadUrl = withFilter(downloadUrl, entityName);
+			final RowCounter rows = new RowCounter(consumer, uniqueSortingAttribute, from);
+			if (prefetchPages > 0)
+			{
+				streamPrefetchedPages(fetchPage(downloadUrl, plan), entityName, uniqueSortingAttribute, rows);
+				return;
+			}
 
-			String nextHref;
-			do
+			final AdaptivePageSize adaptivePageSize = createAdaptivePageSize(pageSize);
+			Page page = readPage(downloadUrl, plan, rows, adaptivePageSize);
+			String nextUrl;
+			while ((nextUrl = getNextUrl(page, entityName, uniqueSortingAttribute)) != null)
 			{
-				final JSONArray items = json.getJSONArray("items");
-				items.iterator()
-					 .forEachRemaining((Object item) -> consumer.accept(
-							 getAttributes((JSONObject) item, entity.getAttributes())));
+				rows.pageConsumed(false);
+				page = readPage(nextUrl, page.plan, rows, adaptivePageSize);
+			}
+			rows.pageConsumed(true);
+		}
+		catch (final ExecutionException ex)
+		{
+			LOG.error("Error streaming entity data for {}.", entityName, ex.getCause());
+		}
+		catch (final InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+			LOG.error("Interrupted while streaming entity data for {}.", entityName, ex);
+		}
+		catch (final JSONException | IOException | URISyntaxException | ParseException ex)
+		{
+			LOG.error("Error streaming entity data for {}.", entityName, ex);
+		}
+
+	}
+
+	/**
+	 * Consumes the pages of an entity while the following pages are fetched and parsed on background threads. The
+	 * number of pages waiting to be consumed is bounded by {@link #prefetchPages}.
+	 */
+	private void streamPrefetchedPages(Page page, final String entityName, final String sortAttribute,
+			final RowCounter rows) throws InterruptedException, ExecutionException, IOException, URISyntaxException
+	{
+		final RowExtractionPlan plan = page.plan;
+		final Deque<Future<Page>> pending = new ArrayDeque<>();
+		Page lastRequested = page;
+		try
+		{
+			while (page != null)
+			{
+				String nextUrl;
+				while (pending.size() < prefetchPages
+						&& (nextUrl = getNextUrl(lastRequested, entityName, sortAttribute)) != null)
+				{
+					final String url = nextUrl;
+					pending.add(fetchPageAsync(url, plan));
+					if (pagingMode != PagingMode.OFFSET)
+					{
+						break;
+					}
+					lastRequested = lastRequested.next();
+				}
 
-				nextHref = json.optString("nextHref");
-				if (StringUtils.isNotEmpty(nextHref))
+				page.rows.forEach(rows);
+				rows.pageConsumed(pending.isEmpty());
+				page = pending.isEmpty() ? null : pending.poll().get();
+				if (page != null && pagingMode != PagingMode.OFFSET)
 				{
-					json = getJsonDataFromUrl(nextHref);
+					lastRequested = page;
 				}
 			}
-			while (StringUtils.isNotEmpty(nextHref));
+		}
+		finally
+		{
+			pending.forEach(future -> future.cancel(true));
+		}
+	}
 
+	/**
+	 * Splits the entity into id ranges and downloads the ranges concurrently.
+	 *
+	 * @return false if the entity is not worth splitting, or its ids cannot be split
+	 */
+	private boolean streamPartitions(final String entityName, final Attribute idAttribute,
+			final EntityConsumer consumer, final Integer pageSize, final Checkpoint from)
+			throws IOException, URISyntaxException, InterruptedException, ExecutionException
+	{
+		final String idName = idAttribute.getName();
+		final String lastConsumed = from != null ? from.getLastId() : null;
+		final Page first = fetchPage(getRangeUrl(entityName, idName, 1, "asc", null, null, lastConsumed),
+				plans.get(entityName));
+		if (first.lastRow == null || first.total <= (pageSize != null ? pageSize : DEFAULT_PAGE_SIZE))
+		{
+			return false;
 		}
-		catch (final JSONException | IOException | URISyntaxException | ParseException ex)
+		final Page last = fetchPage(getRangeUrl(entityName, idName, 1, "desc", null, null, null), first.plan);
+		final List<String> boundaries = IdRangeSplitter.split(idAttribute.getDataType(), first.lastRow.get(idName),
+				last.lastRow.get(idName), partitions);
+		if (boundaries.isEmpty())
 		{
-			LOG.error("Error streaming entity data for {}.", entityName, ex);
+			LOG.info("The ids of {} cannot be split into ranges, downloading it in one stream.", entityName);
+			return false;
+		}
+		LOG.info("Downloading {} in {} id ranges...", entityName, boundaries.size() + 1);
+
+		final RowCounter rows = new RowCounter(consumer, idName, from);
+		if (orderedPartitions)
+		{
+			streamOrderedRanges(entityName, idName, pageSize, boundaries, lastConsumed, rows);
+		}
+		else
+		{
+			streamUnorderedRanges(entityName, idName, pageSize, boundaries, lastConsumed, rows);
+		}
+		rows.pageConsumed(true);
+		return true;
+	}
+
+	/**
+	 * Streams the first range directly to the consumer while the other ranges are downloaded into temporary files,
+	 * which are replayed in order once the ranges before them have been consumed.
+	 */
+	private void streamOrderedRanges(final String entityName, final String idName, final Integer pageSize,
+			final List<String> boundaries, final String lastConsumed, final RowCounter rows)
+			throws IOException, URISyntaxException, InterruptedException, ExecutionException
+	{
+		final List<Future<RowSpool>> spools = new ArrayList<>();
+		// every spool that was created, so that the spools of cancelled ranges are removed as well; a cancelled task
+		// can still be blocked reading a page, so it cannot be relied on to remove its spool itself
+		final List<RowSpool> created = new ArrayList<>();
+		final AtomicBoolean closed = new AtomicBoolean();
+		try
+		{
+			for (int range = 1; range <= boundaries.size(); range++)
+			{
+				final String lower = boundaries.get(range - 1);
+				final String upper = range < boundaries.size() ? boundaries.get(range) : null;
+				spools.add(getExecutor().submit(() ->
+				{
+					final RowSpool spool = RowSpool.create();
+					synchronized (created)
+					{
+						if (closed.get())
+						{
+							spool.close();
+							throw new CancellationException("The rows of " + entityName + " are no longer needed");
+						}
+						created.add(spool);
+					}
+					try
+					{
+						streamRange(entityName, idName, pageSize, lower, upper, null, spool::write, spool::endPage);
+						spool.finish();
+						return spool;
+					}
+					catch (final UncheckedIOException ex)
+					{
+						spool.close();
+						throw ex.getCause();
+					}
+					catch (final Exception ex)
+					{
+						spool.close();
+						throw ex;
+					}
+				}));
+			}
+
+			streamRange(entityName, idName, pageSize, null, boundaries.get(0), lastConsumed, rows,
+					() -> rows.pageConsumed(false));
+			for (final Future<RowSpool> future : spools)
+			{
+				try (RowSpool spool = future.get())
+				{
+					spool.replay(rows, () -> rows.pageConsumed(false));
+				}
+			}
+		}
+		finally
+		{
+			spools.forEach(future -> future.cancel(true));
+			synchronized (created)
+			{
+				closed.set(true);
+				created.forEach(MolgenisRestApiClient::closeSpool);
+			}
+		}
+	}
+
+	/**
+	 * Removes the temporary file of a range, if it was not removed already.
+	 */
+	private static void closeSpool(final RowSpool spool)
+	{
+		try
+		{
+			spool.close();
+		}
+		catch (final Exception ex)
+		{
+			LOG.debug("Could not remove the temporary file of an id range.", ex);
+		}
+	}
+
+	/**
+	 * Downloads all ranges concurrently and hands the rows of each page to the consumer as soon as the page arrives.
+	 */
+	private void streamUnorderedRanges(final String entityName, final String idName, final Integer pageSize,
+			final List<String> boundaries, final String lastConsumed, final RowCounter rows)
+			throws InterruptedException, ExecutionException
+	{
+		final List<Future<?>> downloads = new ArrayList<>();
+		try
+		{
+			for (int range = 0; range <= boundaries.size(); range++)
+			{
+				final String lower = range > 0 ? boundaries.get(range - 1) : null;
+				final String upper = range < boundaries.size() ? boundaries.get(range) : null;
+				final String after = range == 0 ? lastConsumed : null;
+				downloads.add(getExecutor().submit(() ->
+				{
+					final List<Map<String, String>> page = new ArrayList<>();
+					streamRange(entityName, idName, pageSize, lower, upper, after, page::add, () ->
+					{
+						synchronized (rows)
+						{
+							page.forEach(rows);
+						}
+						page.clear();
+					});
+					return null;
+				}));
+			}
+			for (final Future<?> download : downloads)
+			{
+				download.get();
+			}
+		}
+		finally
+		{
+			downloads.forEach(download -> download.cancel(true));
+		}
+	}
+
+	/**
+	 * Streams the rows with ids in a range page by page, requesting every page after the last id of the previous one.
+	 *
+	 * @param lower the smallest id of the range, or null if the range has no lower bound
+	 * @param upper the id after the range, or null if the range has no upper bound
+	 * @param after the id after which to start, or null to start at the lower bound
+	 */
+	private void streamRange(final String entityName, final String idName, final Integer pageSize,
+			final String lower, final String upper, final String after, final Consumer<Map<String, String>> rows,
+			final PageListener listener) throws IOException, URISyntaxException
+	{
+		final AdaptivePageSize adaptivePageSize = createAdaptivePageSize(pageSize);
+		RowExtractionPlan plan = plans.get(entityName);
+		String lastId = after;
+		Page page;
+		do
+		{
+			page = readPage(getRangeUrl(entityName, idName, pageSize, "asc", lower, upper, lastId), plan, rows,
+					adaptivePageSize);
+			plan = page.plan;
+			listener.pageEnd();
+			lastId = page.lastRow != null ? page.lastRow.get(idName) : null;
+		}
+		while (StringUtils.isNotEmpty(page.nextHref) && lastId != null);
+	}
+
+	/**
+	 * @param num       the page size, or null for the default page size
+	 * @param direction the direction to sort the ids in, 'asc' or 'desc'
+	 * @param lower     the smallest id to request, or null
+	 * @param upper     the id after the last id to request, or null
+	 * @param after     the id after which to request the rows, overriding the lower bound, or null
+	 */
+	private String getRangeUrl(final String entityName, final String idName, final Integer num,
+			final String direction, final String lower, final String upper, final String after)
+			throws URISyntaxException
+	{
+		final List<String> query = new ArrayList<>();
+		if (after != null)
+		{
+			query.add(idName + "=gt=" + quoteRsql(after));
+		}
+		else if (lower != null)
+		{
+			query.add(idName + "=ge=" + quoteRsql(lower));
+		}
+		if (upper != null)
+		{
+			query.add(idName + "=lt=" + quoteRsql(upper));
+		}
+		final URIBuilder builder = new URIBuilder(uri + "/api/v2/" + entityName);
+		if (num != null)
+		{
+			builder.addParameter("num", num.toString());
+		}
+		builder.addParameter("sort", idName + ":" + direction);
+		if (!query.isEmpty())
+		{
+			builder.addParameter("q", String.join(";", query));
+		}
+		return withFilter(builder.build().toString(), entityName);
+	}
+
+	private String getNextUrl(final Page page, final String entityName, final String sortAttribute)
+			throws URISyntaxException
+	{
+		if (pagingMode == PagingMode.KEYSET)
+		{
+			if (StringUtils.isEmpty(page.nextHref) || page.lastRow == null)
+			{
+				return null;
+			}
+			return getRangeUrl(entityName, sortAttribute, page.num > 0 ? page.num : null, "asc", null, null,
+					page.lastRow.get(sortAttribute));
+		}
+		if (pagingMode == PagingMode.OFFSET)
+		{
+			final int start = page.start + page.num;
+			if (page.num <= 0 || start >= page.total)
+			{
+				return null;
+			}
+			return withFilter(uri + "/api/v2/" + entityName + "?num=" + page.num + "&start=" + start + "&sort="
+					+ sortAttribute + ":asc", entityName);
+		}
+		return StringUtils.isNotEmpty(page.nextHref) ? withFilter(uri.resolve(page.nextHref).toString(),
+				entityName) : null;
+	}
+
+	/**
+	 * Adds the filter of the entity to the RSQL query of a URL, if the rows of the entity are filtered. A URL that
+	 * has the filter already, like the next page link of a filtered page, is returned as it is.
+	 */
+	private String withFilter(final String url, final String entityName) throws URISyntaxException
+	{
+		final String filter = filters.get(entityName);
+		if (filter == null)
+		{
+			return url;
+		}
+		final URIBuilder builder = new URIBuilder(url);
+		final String query = builder.getQueryParams()
+									.stream()
+									.filter(parameter -> parameter.getName().equals("q"))
+									.map(NameValuePair::getValue)
+									.findFirst()
+									.orElse(null);
+		final String group = '(' + filter + ')';
+		if (query == null)
+		{
+			builder.setParameter("q", filter);
+		}
+		else if (!query.equals(filter) && !query.startsWith(group + ';'))
+		{
+			builder.setParameter("q", group + ';' + query);
+		}
+		return builder.build().toString();
+	}
+
+	/**
+	 * Quotes a value for use in an RSQL query, so that it may contain reserved characters.
+	 */
+	static String quoteRsql(final String value)
+	{
+		return EntitySelection.quote(value);
+	}
+
+	/**
+	 * Reads a page and keeps its rows in memory, to be consumed later.
+	 */
+	private Page fetchPage(final String url, final RowExtractionPlan plan) throws IOException, URISyntaxException
+	{
+		final List<Map<String, String>> rows = new ArrayList<>();
+		return readPage(url, plan, rows::add).withRows(rows);
+	}
+
+	/**
+	 * @return the page size to adapt while reading a stream of pages, or null if the page size is fixed
+	 */
+	private AdaptivePageSize createAdaptivePageSize(final Integer pageSize)
+	{
+		if (targetPageMillis == 0)
+		{
+			return null;
+		}
+		return new AdaptivePageSize(pageSize != null ? pageSize : DEFAULT_PAGE_SIZE, targetPageMillis);
+	}
+
+	/**
+	 * Reads a page with the adapted page size, and adapts the size to the time it took. When the request times out
+	 * before any row of the page is consumed, it is retried with a smaller page.
+	 *
+	 * @param pageSize the page size to adapt, or null to read the page with the page size in the URL
+	 */
+	private Page readPage(final String url, final RowExtractionPlan plan, final Consumer<Map<String, String>> rows,
+			final AdaptivePageSize pageSize) throws IOException, URISyntaxException
+	{
+		if (pageSize == null)
+		{
+			return readPage(url, plan, rows);
+		}
+		while (true)
+		{
+			final String sizedUrl = new URIBuilder(url).setParameter("num", Integer.toString(pageSize.get()))
+													   .build()
+													   .toString();
+			final AtomicInteger count = new AtomicInteger();
+			final AtomicLong begin = new AtomicLong();
+			try
+			{
+				// a timeout before the first row is not retried at the same size, the page is made smaller instead
+				final Page page = readPage(withProjection(new URI(sizedUrl)), plan, row ->
+				{
+					count.incrementAndGet();
+					rows.accept(row);
+				}, 1, ex -> ex instanceof SocketTimeoutException && count.get() == 0 && pageSize.canShrink(), begin);
+				pageSize.update(count.get(), page.bytes,
+						TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin.get()));
+				return page;
+			}
+			catch (final SocketTimeoutException ex)
+			{
+				final int timedOutSize = pageSize.get();
+				if (count.get() > 0 || !pageSize.shrink())
+				{
+					throw ex;
+				}
+				LOG.warn("Reading a page of {} rows timed out, retrying with {} rows: {}", timedOutSize,
+						pageSize.get(), sizedUrl);
+			}
+		}
+	}
+
+	/**
+	 * Sends the request for a page without waiting for the response, and parses the response on a worker thread once
+	 * it has arrived. This way a non-blocking transport does not take up a thread for each request in flight.
+	 */
+	private CompletableFuture<Page> fetchPageAsync(final String url, final RowExtractionPlan plan)
+			throws IOException, URISyntaxException
+	{
+		LOG.debug("Downloading from: {}", url);
+		final URI pageUri = withProjection(new URI(url));
+		final HttpGet request = createGet(pageUri);
+		acquireRequest();
+		final CompletableFuture<HttpResponse> response = transport.executeAsync(request);
+		final CompletableFuture<Page> page = response.thenApplyAsync(result ->
+		{
+			final List<Map<String, String>> rows = new ArrayList<>();
+			try
+			{
+				checkStatus(result, pageUri);
+				return readPage(result, plan, rows::add).withRows(rows);
+			}
+			catch (final IOException ex)
+			{
+				throw new UncheckedIOException(ex);
+			}
+		}, getExecutor());
+		page.whenComplete((result, ex) ->
+		{
+			releaseRequest();
+			if (page.isCancelled())
+			{
+				response.thenAccept(MolgenisRestApiClient::abort);
+			}
+		});
+		final CompletableFuture<Page> retried = page.handle(
+				(result, ex) -> ex == null ? CompletableFuture.completedFuture(result) :
+						retryPageAsync(pageUri, plan, ex)).thenCompose(Function.identity());
+		retried.whenComplete((result, ex) ->
+		{
+			if (retried.isCancelled())
+			{
+				page.cancel(false);
+			}
+		});
+		return retried;
+	}
+
+	/**
+	 * Sends the request for a page again on a worker thread, if the first attempt failed in a way the retry policy
+	 * allows to retry.
+	 */
+	private CompletableFuture<Page> retryPageAsync(final URI url, final RowExtractionPlan plan, final Throwable ex)
+	{
+		final CompletableFuture<Page> retry = new CompletableFuture<>();
+		final Throwable cause = ex instanceof CompletionException ? ex.getCause() : ex;
+		final Throwable failure = cause instanceof UncheckedIOException ? cause.getCause() : cause;
+		if (!(failure instanceof IOException) || !retryPolicy.shouldRetry(1, (IOException) failure))
+		{
+			retry.completeExceptionally(failure);
+			return retry;
+		}
+		getExecutor().execute(() ->
+		{
+			try
+			{
+				awaitRetry(url, 1, (IOException) failure);
+				final List<Map<String, String>> rows = new ArrayList<>();
+				retry.complete(readPage(url, plan, rows::add, 2).withRows(rows));
+			}
+			catch (final IOException | RuntimeException retryFailure)
+			{
+				retry.completeExceptionally(retryFailure);
+			}
+		});
+		return retry;
+	}
+
+	/**
+	 * Streams the items of a page to a consumer while the response is being parsed, so that only one row at a time
+	 * is kept in memory.
+	 *
+	 * @param plan the plan to extract the rows of the page, or null to create it from the metadata in the page
+	 */
+	private Page readPage(final String url, final RowExtractionPlan plan, final Consumer<Map<String, String>> rows)
+			throws IOException, URISyntaxException
+	{
+		return readPage(withProjection(new URI(url)), plan, rows, 1);
+	}
+
+	private Page readPage(final URI url, final RowExtractionPlan plan, final Consumer<Map<String, String>> rows,
+			final int attempt) throws IOException
+	{
+		return readPage(url, plan, rows, attempt, ex -> false, new AtomicLong());
+	}
+
+	/**
+	 * Reads a page, and sends the request again if it fails and the retry policy allows it. When an attempt fails
+	 * after some rows were consumed, those rows are skipped in the next attempt.
+	 *
+	 * @param attempt the number of the first attempt, starting at 1
+	 * @param handled the failures that the caller handles itself, which are thrown without retrying
+	 * @param started  set to the {@link System#nanoTime()} at which the last attempt got its concurrency permit, so
+	 *                 that the time waiting for a permit is not counted as time spent on the page
+	 */
+	private Page readPage(final URI url, final RowExtractionPlan plan, final Consumer<Map<String, String>> rows,
+			final int attempt, final Predicate<IOException> handled, final AtomicLong started) throws IOException
+	{
+		final AtomicInteger consumed = new AtomicInteger();
+		for (int current = attempt; ; current++)
+		{
+			LOG.debug("Downloading from: {}", url);
+			final int skip = consumed.get();
+			final AtomicInteger read = new AtomicInteger();
+			final IOException failure;
+			acquireRequest();
+			started.set(System.nanoTime());
+			try
+			{
+				return readPage(execute(url), plan, row ->
+				{
+					if (read.incrementAndGet() > skip)
+					{
+						consumed.incrementAndGet();
+						rows.accept(row);
+					}
+				});
+			}
+			catch (final IOException ex)
+			{
+				failure = ex;
+			}
+			finally
+			{
+				releaseRequest();
+			}
+			if (handled.test(failure))
+			{
+				throw failure;
+			}
+			awaitRetry(url, current, failure);
 		}
+	}
 
+	/**
+	 * Waits before the next attempt of a failed request, or rethrows the reason it failed if the retry policy does
+	 * not allow another attempt.
+	 */
+	private void awaitRetry(final URI url, final int attempt, final IOException ex) throws IOException
+	{
+		if (!retryPolicy.shouldRetry(attempt, ex))
+		{
+			throw ex;
+		}
+		final long delay = retryPolicy.getDelayMillis(attempt, ex);
+		final String name = getResourceName(url);
+		retryCounts.computeIfAbsent(name, key -> new AtomicInteger()).incrementAndGet();
+		LOG.warn("Request for {} failed ({}), retry {} of {} in {} ms.", name, ex.toString(), attempt,
+				retryPolicy.getRetries(), delay);
+		try
+		{
+			Thread.sleep(delay);
+		}
+		catch (final InterruptedException interrupted)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting to retry " + url);
+		}
+	}
+
+	/**
+	 * Adds the projection of the entity to the URL of a page, if projections are enabled or attributes are selected.
+	 */
+	private URI withProjection(final URI url) throws URISyntaxException
+	{
+		final String attrs = projections.get(getResourceName(url));
+		return attrs != null ? new URIBuilder(url).setParameter("attrs", attrs).build() : url;
+	}
+
+	/**
+	 * @return the name of the entity or other resource a request is for
+	 */
+	private static String getResourceName(final URI url)
+	{
+		final String path = url.getPath();
+		final int index = path.indexOf("/api/v2/");
+		return index >= 0 ? path.substring(index + "/api/v2/".length()) : path;
+	}
+
+	/**
+	 * Throws an exception for a response without a 2xx status, after releasing the response.
+	 */
+	private static void checkStatus(final HttpResponse response, final URI url) throws HttpStatusException
+	{
+		final int statusCode = response.getStatusLine().getStatusCode();
+		if (statusCode < 200 || statusCode >= 300)
+		{
+			final Header retryAfter = response.getFirstHeader("Retry-After");
+			release(response);
+			throw new HttpStatusException(response.getStatusLine() + " for " + url, statusCode,
+					retryAfter != null ? parseRetryAfter(retryAfter.getValue()) : null);
+		}
+	}
+
+	/**
+	 * @param value the number of seconds to wait, or the date to wait until
+	 * @return the number of milliseconds to wait, or null if the value cannot be parsed
+	 */
+	static Long parseRetryAfter(final String value)
+	{
+		if (value.trim().matches("\\d+"))
+		{
+			return TimeUnit.SECONDS.toMillis(Long.parseLong(value.trim()));
+		}
+		final Date date = DateUtils.parseDate(value.trim());
+		return date != null ? Math.max(0, date.getTime() - System.currentTimeMillis()) : null;
+	}
+
+	private Page readPage(final HttpResponse response, final RowExtractionPlan plan,
+			final Consumer<Map<String, String>> rows) throws IOException
+	{
+		final CountingInputStream content = new CountingInputStream(response.getEntity().getContent());
+		final Reader reader = new InputStreamReader(content, StandardCharsets.UTF_8);
+		final Page page;
+		try
+		{
+			final PageParser parser = new PageParser(reader);
+			final AtomicReference<RowExtractionPlan> pagePlan = new AtomicReference<>(plan);
+			final AtomicReference<Map<String, String>> lastRow = new AtomicReference<>();
+			final JSONObject json = parser.parse(item ->
+			{
+				if (pagePlan.get() == null)
+				{
+					final JSONObject meta = parser.getProperties().getJSONObject("meta");
+					pagePlan.set(RowExtractionPlan.create(new MetadataGraphBuilder().entityFromJSON(meta)));
+				}
+				final Map<String, String> row = pagePlan.get().extract(item);
+				rows.accept(row);
+				lastRow.set(row);
+			});
+			if (pagePlan.get() == null && json.has("meta"))
+			{
+				pagePlan.set(RowExtractionPlan.create(
+						new MetadataGraphBuilder().entityFromJSON(json.getJSONObject("meta"))));
+			}
+			page = new Page(pagePlan.get(), Collections.emptyList(), lastRow.get(), json.optString("nextHref"),
+					json.optInt("start"), json.optInt("num"), json.optInt("total"), content.getCount());
+		}
+		catch (final JSONException ex)
+		{
+			abort(response);
+			// the tokener wraps errors reading the response, which should be handled as the I/O errors they are
+			if (ex.getCause() instanceof IOException)
+			{
+				throw (IOException) ex.getCause();
+			}
+			throw ex;
+		}
+		catch (final RuntimeException | Error ex)
+		{
+			// closing the stream of an unfinished response would first read the rest of it
+			abort(response);
+			throw ex;
+		}
+		reader.close();
+		return page;
+	}
+
+	private synchronized ExecutorService getExecutor()
+	{
+		if (executor == null)
+		{
+			executor = Executors.newCachedThreadPool(threadMode.newThreadFactory("molgenis-client-"));
+		}
+		return executor;
 	}
 
 	private JSONObject getJsonDataFromUrl(String url) throws IOException, URISyntaxException
@@ -190,16 +1133,41 @@ public class MolgenisRestApiClient implements MolgenisClient
 		try
 		{
 			if (converter == null) initConverter(version);
-			LOG.info("Retrieving languages...");
-			streamEntityData(converter.getLanguagesRepositoryName(), converter::toLanguage);
-			LOG.info("Retrieving tags...");
-			streamEntityData(converter.getTagsRepositoryName(), converter::toTag);
-			LOG.info("Retrieving packages...");
-			streamEntityData(converter.getPackagesRepositoryName(), converter::toPackage);
-			LOG.info("Retrieving attributes...");
-			streamEntityData(converter.getAttributesRepositoryName(), converter::toAttribute);
-			LOG.info("Retrieving entities...");
-			streamEntityData(converter.getEntitiesRepositoryName(), converter::toEntity);
+			final List<String> names = asList(converter.getLanguagesRepositoryName(),
+					converter.getTagsRepositoryName(), converter.getPackagesRepositoryName(),
+					converter.getAttributesRepositoryName(), converter.getEntitiesRepositoryName());
+			final List<List<Map<String, String>>> rows;
+			if (metadataCache != null)
+			{
+				final String key = uri + " " + (version != null ? version.toVersionString() : "unknown");
+				final List<Integer> totals = getTotals(names);
+				final String fingerprint = totals.toString();
+				final List<List<Map<String, String>>> cached = metadataCache.load(key, fingerprint);
+				if (cached != null && cached.size() == names.size())
+				{
+					LOG.info("Using the cached metadata.");
+					rows = cached;
+				}
+				else
+				{
+					rows = fetchRows(names);
+					if (isComplete(rows, totals))
+					{
+						metadataCache.store(key, fingerprint, rows);
+					}
+				}
+			}
+			else
+			{
+				rows = fetchRows(names);
+			}
+			// the rows are only converted once all repositories have been fetched: the converter is not thread-safe
+			// and expects them in this order, e.g. languages before entities
+			rows.get(0).forEach(converter::toLanguage);
+			rows.get(1).forEach(converter::toTag);
+			rows.get(2).forEach(converter::toPackage);
+			rows.get(3).forEach(converter::toAttribute);
+			rows.get(4).forEach(converter::toEntity);
 			converter.postProcess(repository);
 			return repository;
 		}
@@ -210,148 +1178,197 @@ public class MolgenisRestApiClient implements MolgenisClient
 		}
 	}
 
-	@Override
-	public void close() throws Exception
+	/**
+	 * Downloads the rows of the metadata repositories, each on a worker thread, so that all repositories are
+	 * downloaded at the same time. The rows of all repositories are returned together, after the slowest download
+	 * has finished, so they are all held in memory until they have been converted.
+	 */
+	private List<List<Map<String, String>>> fetchRows(final List<String> repositoryNames)
+			throws InterruptedException, ExecutionException
 	{
+		final List<Future<List<Map<String, String>>>> downloads = new ArrayList<>();
 		try
 		{
-			if (token != null)
+			for (final String repositoryName : repositoryNames)
 			{
-				logout();
+				downloads.add(getExecutor().submit(() ->
+				{
+					final List<Map<String, String>> rows = new ArrayList<>();
+					streamEntityData(repositoryName, rows::add);
+					return rows;
+				}));
 			}
+			final List<List<Map<String, String>>> result = new ArrayList<>();
+			for (final Future<List<Map<String, String>>> download : downloads)
+			{
+				result.add(download.get());
+			}
+			return result;
 		}
 		finally
 		{
-			token = null;
+			downloads.forEach(download -> download.cancel(true));
 		}
 	}
 
-	private String download(final URI uri) throws JSONException, IOException, ParseException
+	/**
+	 * The REST API has no cheaper signal of a metadata change, such as a modification date or an ETag, so changes
+	 * that keep the number of rows the same are only noticed once the cached metadata expires.
+	 *
+	 * @return the number of rows in each repository, which together tell cheaply whether the metadata has changed
+	 */
+	private List<Integer> getTotals(final List<String> repositoryNames) throws IOException, URISyntaxException
 	{
-		HttpGet request = new HttpGet(uri);
-		if (token != null)
+		final List<Integer> totals = new ArrayList<>();
+		for (final String repositoryName : repositoryNames)
 		{
-			request.setHeader("x-molgenis-token", token);
+			totals.add(getJsonDataFromUrl(uri + "/api/v2/" + repositoryName + "?num=1").getInt("total"));
 		}
-		HttpResponse result = client.execute(request);
-		return EntityUtils.toString(result.getEntity(), StandardCharsets.UTF_8);
+		return totals;
 	}
 
-	Map<String, String> getAttributes(final JSONObject input, Collection<Attribute> attributes)
+	/**
+	 * Rows that failed to download are only logged, so the metadata is only cached if no rows are missing.
+	 */
+	private static boolean isComplete(final List<List<Map<String, String>>> rows, final List<Integer> totals)
 	{
-		List<Attribute> attributesList = new ArrayList<>(attributes);
-
-		Collections.sort(attributesList);
-		final Map<String, String> data = new HashMap<>();
-
-		attributesList.forEach((Attribute attribute) ->
+		for (int i = 0; i < totals.size(); i++)
 		{
+			if (rows.get(i).size() < totals.get(i))
+			{
+				LOG.warn("Not caching the metadata, it changed or was not downloaded completely.");
+				return false;
+			}
+		}
+		return true;
+	}
 
-			final DataType type = attribute.getDataType();
-			final String name = attribute.getName();
-
-			if (type.isXReferenceType())
+	@Override
+	public void close() throws Exception
+	{
+		try
+		{
+			if (token != null)
 			{
-				final JSONObject reference = input.optJSONObject(name);
-				if (reference != null)
+				logout();
+			}
+		}
+		finally
+		{
+			token = null;
+			synchronized (this)
+			{
+				if (executor != null)
 				{
-					final Entity refEntity = attribute.getRefEntity();
-					final String id = refEntity.getIdAttribute().getName();
-					if (refEntity.getIdAttribute().getDataType().isNumericType())
-					{
-						data.put(attribute.getName(), Long.toString(reference.getLong(id)));
-					}
-					else
-					{
-						data.put(attribute.getName(), reference.getString(id));
-					}
+					executor.shutdownNow();
+					executor = null;
 				}
 			}
-			else if (type.isMReferenceType())
+			transport.close();
+		}
+	}
+
+	private String download(final URI uri) throws JSONException, IOException, ParseException
+	{
+		for (int attempt = 1; ; attempt++)
+		{
+			final IOException failure;
+			acquireRequest();
+			try
 			{
-				final JSONArray array = input.optJSONArray(name);
-				if (array != null)
+				HttpResponse result = execute(uri);
+				try
 				{
-					final Entity refEntity = attribute.getRefEntity();
-					final String id = refEntity.getIdAttribute().getName();
-					final List<String> elements = new ArrayList<>();
-					array.forEach((Object element) ->
-					{
-						final JSONObject reference = (JSONObject) element;
-						if (refEntity.getIdAttribute().getDataType().isNumericType())
-						{
-							elements.add(Long.toString(reference.getLong(id)));
-						}
-						else
-						{
-							elements.add(reference.getString(id));
-						}
-					});
-					final String references = elements.stream().collect(Collectors.joining(","));
-					data.put(attribute.getName(), references);
+					return EntityUtils.toString(result.getEntity(), StandardCharsets.UTF_8);
+				}
+				finally
+				{
+					release(result);
 				}
 			}
-			else if (type.equals(DataType.COMPOUND))
+			catch (final IOException ex)
 			{
-				Map<String, String> parts = getAttributes(input, attribute.getParts());
-				data.putAll(parts);
+				failure = ex;
 			}
-			else
+			finally
 			{
-				final String value = input.optString(name);
-				data.put(attribute.getName(), value);
+				releaseRequest();
 			}
-		});
-		return data;
+			awaitRetry(uri, attempt, failure);
+		}
 	}
 
-	private Entity entityFromJSON(final JSONObject metadata)
+	private void acquireRequest() throws InterruptedIOException
 	{
-		Entity ent = new Entity(metadata.getString("name"));
-		final String idAttribute = metadata.getString("idAttribute");
-		final JSONArray attributes = metadata.getJSONArray("attributes");
-		attributes.iterator().forEachRemaining((Object object) ->
+		if (requests != null)
 		{
-			final JSONObject attributeMetadata = (JSONObject) object;
-			final Attribute attribute = attributeFromJSON(ent, attributeMetadata);
-			ent.addAttribute(attribute);
-			if (idAttribute.equals(attribute.getName()))
+			try
 			{
-				ent.setIdAttribute(attribute);
+				requests.acquire();
 			}
-		});
-		return ent;
+			catch (final InterruptedException ex)
+			{
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting to send a request");
+			}
+		}
 	}
 
-	private Attribute attributeFromJSON(final Entity entity, final JSONObject meta) throws JSONException
+	private void releaseRequest()
 	{
-		final DataType type = DataType.valueOf(meta.getString("fieldType"));
-		final String name = meta.getString("name");
-		Attribute att = new Attribute(name);
-		att.setEntityFullname(entity.getFullName());
-		att.setName(name);
-		att.setDataType(type);
-
-		if (DataType.COMPOUND.equals(type))
+		if (requests != null)
 		{
-			final JSONArray parts = meta.getJSONArray("attributes");
-			parts.forEach(part ->
-			{
-				final JSONObject partMeta = (JSONObject) part;
-				att.addPart(attributeFromJSON(entity, partMeta));
-			});
+			requests.release();
 		}
-		else
+	}
+
+	/**
+	 * Reads what is left of the entity of a response, so that its connection goes back to the pool to be reused.
+	 */
+	private static void release(final HttpResponse response)
+	{
+		EntityUtils.consumeQuietly(response.getEntity());
+	}
+
+	/**
+	 * Closes the connection of a response that was not read completely, instead of reading the rest of a possibly
+	 * large entity just to reuse the connection.
+	 */
+	private static void abort(final HttpResponse response)
+	{
+		if (response instanceof Closeable)
 		{
-			final boolean nillable = meta.getBoolean("nillable");
-			att.setNilleble(nillable);
-			if (type.isReferenceType())
+			try
 			{
-				final JSONObject refEntity = meta.getJSONObject("refEntity");
-				att.setRefEntity(entityFromJSON(refEntity));
+				((Closeable) response).close();
 			}
+			catch (final IOException ex)
+			{
+				LOG.debug("Error closing the connection of an aborted response.", ex);
+			}
+		}
+	}
+
+	private HttpResponse execute(final URI uri) throws IOException
+	{
+		final HttpResponse response = transport.execute(createGet(uri));
+		checkStatus(response, uri);
+		return response;
+	}
+
+	private HttpGet createGet(final URI uri)
+	{
+		HttpGet request = new HttpGet(uri);
+		if (token != null)
+		{
+			request.setHeader("x-molgenis-token", token);
 		}
-		return att;
+		return request;
+	}
+
+	Map<String, String> getAttributes(final JSONObject input, Collection<Attribute> attributes)
+	{
+		return RowExtractionPlan.create(attributes).extract(input);
 	}
 
 	private void initConverter(MolgenisVersion version) throws IOException, URISyntaxException
@@ -385,4 +1402,81 @@ public class MolgenisRestApiClient implements MolgenisClient
 			}
 		}
 	}
+
+	/**
+	 * Passes rows on to an entity consumer while keeping track of the checkpoint that the rows have reached.
+	 */
+	private static final class RowCounter implements Consumer<Map<String, String>>
+	{
+		private final EntityConsumer consumer;
+		private final String idAttribute;
+		private int rows;
+		private String lastId;
+
+		private RowCounter(final EntityConsumer consumer, final String idAttribute, final Checkpoint from)
+		{
+			this.consumer = consumer;
+			this.idAttribute = idAttribute;
+			if (from != null)
+			{
+				rows = from.getRows();
+				lastId = from.getLastId();
+			}
+		}
+
+		@Override
+		public void accept(final Map<String, String> row)
+		{
+			consumer.accept(row);
+			rows++;
+			lastId = row.get(idAttribute);
+		}
+
+		private void pageConsumed(final boolean complete) throws IOException
+		{
+			consumer.pageConsumed(new Checkpoint(rows, lastId, complete));
+		}
+	}
+
+	/**
+	 * A page of entity data, converted to rows, together with the paging information of the response.
+	 */
+	private static final class Page
+	{
+		private final RowExtractionPlan plan;
+		private final List<Map<String, String>> rows;
+		private final Map<String, String> lastRow;
+		private final String nextHref;
+		private final int start;
+		private final int num;
+		private final int total;
+		private final long bytes;
+
+		private Page(final RowExtractionPlan plan, final List<Map<String, String>> rows,
+				final Map<String, String> lastRow, final String nextHref, final int start, final int num,
+				final int total, final long bytes)
+		{
+			this.plan = plan;
+			this.rows = rows;
+			this.lastRow = lastRow;
+			this.nextHref = nextHref;
+			this.start = start;
+			this.num = num;
+			this.total = total;
+			this.bytes = bytes;
+		}
+
+		/**
+		 * @return the paging information of the page following this one when paging by offset
+		 */
+		private Page next()
+		{
+			return new Page(plan, Collections.emptyList(), null, null, start + num, num, total, 0);
+		}
+
+		private Page withRows(final List<Map<String, String>> rows)
+		{
+			return new Page(plan, rows, lastRow, nextHref, start, num, total, bytes);
+		}
+	}
 }
@@ -0,0 +1,12 @@
+package org.molgenis.downloader.client;
+
+import java.io.IOException;
+
+/**
+ * Called after all rows of a page have been passed on.
+ */
+@FunctionalInterface
+interface PageListener
+{
+	void pageEnd() throws IOException;
+}
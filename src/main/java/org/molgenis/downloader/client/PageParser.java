@@ -0,0 +1,133 @@
+package org.molgenis.downloader.client;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.Reader;
+import java.util.function.Consumer;
+
+/**
+ * Parses a page of the REST API v2 token by token. The items of the page are handed over one by one as soon as they
+ * are read, so only a single item needs to be kept in memory instead of the whole page.
+ */
+class PageParser
+{
+	private static final String ITEMS = "items";
+
+	private final JSONTokener tokener;
+	private final JSONObject properties;
+	private boolean hasItems;
+
+	PageParser(final Reader reader)
+	{
+		tokener = new JSONTokener(reader);
+		properties = new JSONObject();
+	}
+
+	/**
+	 * @return the properties of the page, other than the items, that have been parsed so far
+	 */
+	JSONObject getProperties()
+	{
+		return properties;
+	}
+
+	/**
+	 * Parses the page, passing every object in the 'items' array to the consumer.
+	 *
+	 * @param items consumer for the items of the page
+	 * @return the properties of the page other than the items
+	 * @throws JSONException if the text is not a page, such as the body of an error response, which has no items
+	 */
+	JSONObject parse(final Consumer<JSONObject> items) throws JSONException
+	{
+		if (tokener.nextClean() != '{')
+		{
+			throw tokener.syntaxError("A JSONObject text must begin with '{'");
+		}
+		for (; ; )
+		{
+			switch (tokener.nextClean())
+			{
+				case 0:
+					throw tokener.syntaxError("A JSONObject text must end with '}'");
+				case '}':
+					return end();
+				default:
+					tokener.back();
+					final String key = tokener.nextValue().toString();
+					if (tokener.nextClean() != ':')
+					{
+						throw tokener.syntaxError("Expected a ':' after a key");
+					}
+					if (ITEMS.equals(key))
+					{
+						parseItems(items);
+						hasItems = true;
+					}
+					else
+					{
+						properties.put(key, tokener.nextValue());
+					}
+			}
+			switch (tokener.nextClean())
+			{
+				case ',':
+					if (tokener.nextClean() == '}')
+					{
+						return end();
+					}
+					tokener.back();
+					break;
+				case '}':
+					return end();
+				default:
+					throw tokener.syntaxError("Expected a ',' or '}'");
+			}
+		}
+	}
+
+	/**
+	 * @return the properties of the page, once it has been parsed to the end
+	 */
+	private JSONObject end() throws JSONException
+	{
+		if (!hasItems)
+		{
+			throw new JSONException("The response is not a page, it has no '" + ITEMS + "' array: " + properties);
+		}
+		return properties;
+	}
+
+	private void parseItems(final Consumer<JSONObject> items) throws JSONException
+	{
+		if (tokener.nextClean() != '[')
+		{
+			throw tokener.syntaxError("The items of a page must be an array");
+		}
+		if (tokener.nextClean() == ']')
+		{
+			return;
+		}
+		tokener.back();
+		for (; ; )
+		{
+			final Object item = tokener.nextValue();
+			if (!(item instanceof JSONObject))
+			{
+				throw tokener.syntaxError("The items of a page must be objects");
+			}
+			items.accept((JSONObject) item);
+			switch (tokener.nextClean())
+			{
+				case ',':
+					break;
+				case ']':
+					return;
+				default:
+					throw tokener.syntaxError("Expected a ',' or ']'");
+			}
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package org.molgenis.downloader.client;
+
+import java.util.Locale;
+
+/**
+ * Determines how {@link MolgenisRestApiClient} requests the pages of an entity after the first one.
+ */
+public enum PagingMode
+{
+	/**
+	 * Follow the 'nextHref' of each response. The next page can only be requested once the previous one is parsed.
+	 */
+	NEXT_HREF,
+
+	/**
+	 * Compute the page URLs from the 'start' offset and the 'total' of the first response, so that several pages can
+	 * be requested at the same time.
+	 */
+	OFFSET,
+
+	/**
+	 * Request the rows with an id greater than the last id of the previous page. Unlike offsets, this keeps the cost
+	 * of a page the same across the whole table. The next page can only be requested once the previous one is parsed.
+	 */
+	KEYSET;
+
+	/**
+	 * @param text the name of a paging mode in any case, with or without separators, e.g. 'nextHref', 'next-href' or
+	 *             'NEXT_HREF'
+	 */
+	public static PagingMode from(final String text)
+	{
+		final String key = normalize(text);
+		for (final PagingMode mode : values())
+		{
+			if (normalize(mode.name()).equals(key))
+			{
+				return mode;
+			}
+		}
+		throw new IllegalArgumentException("Unknown paging mode: " + text);
+	}
+
+	private static String normalize(final String text)
+	{
+		return text.replace("_", "").replace("-", "").toLowerCase(Locale.ROOT);
+	}
+}
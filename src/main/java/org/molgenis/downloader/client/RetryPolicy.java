@@ -0,0 +1,93 @@
+package org.molgenis.downloader.client;
+
+import javax.net.ssl.SSLException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides whether a failed GET request is sent again, and how long to wait before it is. The wait grows
+ * exponentially with every attempt and is spread randomly between zero and that bound, so that clients that failed
+ * at the same time do not all come back at the same time. A wait the server asks for with Retry-After is honoured.
+ */
+public class RetryPolicy
+{
+	public static final RetryPolicy NONE = new RetryPolicy(0, 0, 0);
+	public static final int DEFAULT_RETRIES = 3;
+	public static final long DEFAULT_INITIAL_DELAY = 1000;
+	public static final long DEFAULT_MAX_DELAY = 60000;
+
+	private final int retries;
+	private final long initialDelayMillis;
+	private final long maxDelayMillis;
+
+	/**
+	 * @param retries            the number of times to send a request again after it failed
+	 * @param initialDelayMillis the bound of the wait before the first retry, doubled for every next retry
+	 * @param maxDelayMillis     the largest wait before a retry, also for waits the server asks for
+	 */
+	public RetryPolicy(final int retries, final long initialDelayMillis, final long maxDelayMillis)
+	{
+		if (retries < 0 || initialDelayMillis < 0 || maxDelayMillis < 0)
+		{
+			throw new IllegalArgumentException("The retries and delays cannot be negative");
+		}
+		this.retries = retries;
+		this.initialDelayMillis = initialDelayMillis;
+		this.maxDelayMillis = maxDelayMillis;
+	}
+
+	public int getRetries()
+	{
+		return retries;
+	}
+
+	/**
+	 * @param attempt the number of the attempt that failed, starting at 1
+	 * @param ex      the reason the attempt failed
+	 * @return whether to send the request again
+	 */
+	boolean shouldRetry(final int attempt, final Exception ex)
+	{
+		return attempt <= retries && isRetryable(ex);
+	}
+
+	/**
+	 * @param attempt the number of the attempt that failed, starting at 1
+	 * @param ex      the reason the attempt failed, which may say how long the server wants us to wait
+	 * @return the number of milliseconds to wait before the next attempt
+	 */
+	long getDelayMillis(final int attempt, final Exception ex)
+	{
+		if (ex instanceof HttpStatusException && ((HttpStatusException) ex).getRetryAfterMillis() != null)
+		{
+			return Math.min(maxDelayMillis, ((HttpStatusException) ex).getRetryAfterMillis());
+		}
+		final long bound = Math.min(maxDelayMillis, initialDelayMillis << Math.min(attempt - 1, 30));
+		return bound > 0 ? ThreadLocalRandom.current().nextLong(bound + 1) : 0;
+	}
+
+	/**
+	 * Status errors are only retried for 429 and 5xx statuses. Of the other I/O errors, only those that are not
+	 * likely to happen again are not retried: unknown hosts, SSL failures and interrupts.
+	 */
+	private static boolean isRetryable(final Exception ex)
+	{
+		if (ex instanceof HttpStatusException)
+		{
+			return ((HttpStatusException) ex).isRetryable();
+		}
+		if (ex instanceof UnknownHostException || ex instanceof SSLException)
+		{
+			return false;
+		}
+		if (ex instanceof InterruptedIOException)
+		{
+			return ex instanceof SocketTimeoutException
+					|| ex instanceof org.apache.http.conn.ConnectTimeoutException;
+		}
+		return ex instanceof IOException;
+	}
+}
@@ -0,0 +1,173 @@
+package org.molgenis.downloader.client;
+
+import com.google.common.collect.Maps;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.molgenis.downloader.api.EntitySelection;
+import org.molgenis.downloader.api.metadata.Attribute;
+import org.molgenis.downloader.api.metadata.DataType;
+import org.molgenis.downloader.api.metadata.Entity;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.function.Predicate;
+
+/**
+ * Converts the items of a REST API v2 response into rows. All metadata lookups are done once when the plan is created:
+ * compound attributes are flattened and the id attribute of every referenced entity is resolved, so that extracting a
+ * row is a single pass over the columns.
+ */
+final class RowExtractionPlan
+{
+	private enum Kind
+	{
+		VALUE, XREF, MREF
+	}
+
+	private final Column[] columns;
+
+	private RowExtractionPlan(final List<Column> columns)
+	{
+		this.columns = columns.toArray(new Column[0]);
+	}
+
+	static RowExtractionPlan create(final Entity entity)
+	{
+		return create(entity.getAttributes());
+	}
+
+	/**
+	 * @param selection the attributes to extract, or null to extract all attributes
+	 */
+	static RowExtractionPlan create(final Entity entity, final EntitySelection selection)
+	{
+		final List<Column> columns = new ArrayList<>();
+		addColumns(entity.getAttributes(), columns,
+				attribute -> selection == null || selection.includes(entity, attribute));
+		return new RowExtractionPlan(columns);
+	}
+
+	static RowExtractionPlan create(final Collection<Attribute> attributes)
+	{
+		final List<Column> columns = new ArrayList<>();
+		addColumns(attributes, columns, attribute -> true);
+		return new RowExtractionPlan(columns);
+	}
+
+	private static void addColumns(final Collection<Attribute> attributes, final List<Column> columns,
+			final Predicate<Attribute> included)
+	{
+		final List<Attribute> sorted = new ArrayList<>(attributes);
+		sorted.sort(null);
+		for (final Attribute attribute : sorted)
+		{
+			if (!included.test(attribute))
+			{
+				continue;
+			}
+			final DataType type = attribute.getDataType();
+			if (type.equals(DataType.COMPOUND))
+			{
+				addColumns(attribute.getParts(), columns, included);
+			}
+			else if (type.isXReferenceType())
+			{
+				columns.add(new Column(attribute.getName(), Kind.XREF, attribute.getRefEntity()));
+			}
+			else if (type.isMReferenceType())
+			{
+				columns.add(new Column(attribute.getName(), Kind.MREF, attribute.getRefEntity()));
+			}
+			else
+			{
+				columns.add(new Column(attribute.getName(), Kind.VALUE, null));
+			}
+		}
+	}
+
+	/**
+	 * @return the value for the 'attrs' parameter that asks the server for just what this plan extracts: the value of
+	 * every column, and only the id of the entities that are referenced, instead of the expanded entities
+	 */
+	String getProjection()
+	{
+		final StringJoiner projection = new StringJoiner(",");
+		for (final Column column : columns)
+		{
+			projection.add(column.kind != Kind.VALUE && column.refIdName != null ?
+					column.name + '(' + column.refIdName + ')' : column.name);
+		}
+		return projection.toString();
+	}
+
+	Map<String, String> extract(final JSONObject input)
+	{
+		final Map<String, String> data = Maps.newHashMapWithExpectedSize(columns.length);
+		for (final Column column : columns)
+		{
+			final String value = column.extract(input);
+			if (value != null)
+			{
+				data.put(column.name, value);
+			}
+		}
+		return data;
+	}
+
+	private static final class Column
+	{
+		private final String name;
+		private final Kind kind;
+		private final String refIdName;
+		private final boolean numericRefId;
+
+		private Column(final String name, final Kind kind, final Entity refEntity)
+		{
+			this.name = name;
+			this.kind = kind;
+			final Attribute refIdAttribute = refEntity != null ? refEntity.getIdAttribute() : null;
+			this.refIdName = refIdAttribute != null ? refIdAttribute.getName() : null;
+			this.numericRefId = refIdAttribute != null && refIdAttribute.getDataType().isNumericType();
+		}
+
+		private String extract(final JSONObject input)
+		{
+			switch (kind)
+			{
+				case XREF:
+					final JSONObject reference = input.optJSONObject(name);
+					return reference != null ? getReferenceId(reference) : null;
+				case MREF:
+					final JSONArray array = input.optJSONArray(name);
+					if (array == null)
+					{
+						return null;
+					}
+					final StringBuilder references = new StringBuilder();
+					for (int index = 0; index < array.length(); index++)
+					{
+						if (index > 0)
+						{
+							references.append(',');
+						}
+						references.append(getReferenceId(array.getJSONObject(index)));
+					}
+					return references.toString();
+				default:
+					return input.optString(name);
+			}
+		}
+
+		private String getReferenceId(final JSONObject reference)
+		{
+			if (refIdName == null)
+			{
+				throw new IllegalStateException("No id attribute known for the entity referenced by " + name);
+			}
+			return numericRefId ? Long.toString(reference.getLong(refIdName)) : reference.getString(refIdName);
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package org.molgenis.downloader.client;
+
+import com.google.common.collect.Maps;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Keeps the rows of an id range in a temporary file until it is their turn to be consumed, so that ranges can be
+ * downloaded ahead of time without holding their rows in memory. The ends of the pages are recorded as well, so
+ * checkpoints can be made while the rows are replayed.
+ */
+final class RowSpool implements AutoCloseable
+{
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final byte ROW = 1;
+	private static final byte PAGE_END = 2;
+	private static final byte END = 3;
+
+	private final Path file;
+	private final DataOutputStream out;
+
+	private RowSpool(final Path file) throws IOException
+	{
+		this.file = file;
+		out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE));
+	}
+
+	static RowSpool create() throws IOException
+	{
+		return new RowSpool(Files.createTempFile("molgenis-rows", ".spool"));
+	}
+
+	/**
+	 * @throws UncheckedIOException if the row cannot be written, so that this method can be used as a consumer
+	 */
+	void write(final Map<String, String> row)
+	{
+		try
+		{
+			out.writeByte(ROW);
+			out.writeInt(row.size());
+			for (final Map.Entry<String, String> entry : row.entrySet())
+			{
+				writeString(entry.getKey());
+				writeString(entry.getValue());
+			}
+		}
+		catch (final IOException ex)
+		{
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	void endPage() throws IOException
+	{
+		out.writeByte(PAGE_END);
+	}
+
+	/**
+	 * Marks that all rows have been written.
+	 */
+	void finish() throws IOException
+	{
+		out.writeByte(END);
+		out.close();
+	}
+
+	/**
+	 * Passes the rows on in the order they were written, calling the listener at the end of every page.
+	 */
+	void replay(final Consumer<Map<String, String>> rows, final PageListener listener) throws IOException
+	{
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE)))
+		{
+			for (byte tag = in.readByte(); tag != END; tag = in.readByte())
+			{
+				if (tag == PAGE_END)
+				{
+					listener.pageEnd();
+					continue;
+				}
+				final int size = in.readInt();
+				final Map<String, String> row = Maps.newHashMapWithExpectedSize(size);
+				for (int index = 0; index < size; index++)
+				{
+					row.put(readString(in), readString(in));
+				}
+				rows.accept(row);
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		try
+		{
+			out.close();
+		}
+		finally
+		{
+			Files.deleteIfExists(file);
+		}
+	}
+
+	private void writeString(final String value) throws IOException
+	{
+		if (value == null)
+		{
+			out.writeInt(-1);
+			return;
+		}
+		final byte[] bytes = value.getBytes(UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(final DataInputStream in) throws IOException
+	{
+		final int length = in.readInt();
+		if (length < 0)
+		{
+			return null;
+		}
+		final byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, UTF_8);
+	}
+}
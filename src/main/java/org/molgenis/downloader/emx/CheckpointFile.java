@@ -0,0 +1,123 @@
+package org.molgenis.downloader.emx;
+
+import org.molgenis.downloader.api.Checkpoint;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Records per entity how far its download has come, so that an interrupted export can be resumed. Next to the
+ * {@link Checkpoint} it stores the position in the data store after the last row of the checkpoint. The file is
+ * replaced atomically on every update, so it always describes a consistent state.
+ */
+class CheckpointFile
+{
+	static final String EXTENSION = ".checkpoint";
+
+	private static final String ROWS = ".rows";
+	private static final String LAST_ID = ".lastId";
+	private static final String COMPLETE = ".complete";
+	private static final String POSITION = ".position";
+
+	private final Path path;
+	private final Properties properties = new Properties();
+
+	private CheckpointFile(final Path path)
+	{
+		this.path = path;
+	}
+
+	/**
+	 * @param output the output of the export that the checkpoints belong to
+	 */
+	static Path pathFor(final Path output)
+	{
+		return output.resolveSibling(output.getFileName() + EXTENSION);
+	}
+
+	/**
+	 * Creates an empty checkpoint file, replacing the checkpoints of an earlier export.
+	 */
+	static CheckpointFile create(final Path path) throws IOException
+	{
+		final CheckpointFile file = new CheckpointFile(path);
+		file.save();
+		return file;
+	}
+
+	/**
+	 * Loads the checkpoints of an earlier export, or creates an empty checkpoint file if there are none.
+	 */
+	static CheckpointFile load(final Path path) throws IOException
+	{
+		final CheckpointFile file = new CheckpointFile(path);
+		if (Files.exists(path))
+		{
+			try (InputStream in = Files.newInputStream(path))
+			{
+				file.properties.load(in);
+			}
+		}
+		return file;
+	}
+
+	/**
+	 * @return the checkpoint of the entity, or null if no rows of it have been written yet
+	 */
+	synchronized Checkpoint getCheckpoint(final String entity)
+	{
+		final String rows = properties.getProperty(entity + ROWS);
+		if (rows == null)
+		{
+			return null;
+		}
+		return new Checkpoint(Integer.parseInt(rows), properties.getProperty(entity + LAST_ID),
+				Boolean.parseBoolean(properties.getProperty(entity + COMPLETE)));
+	}
+
+	/**
+	 * @return the position in the data store of the entity after the last row of its checkpoint
+	 */
+	synchronized long getPosition(final String entity)
+	{
+		return Long.parseLong(properties.getProperty(entity + POSITION));
+	}
+
+	synchronized void update(final String entity, final Checkpoint checkpoint, final long position)
+			throws IOException
+	{
+		properties.setProperty(entity + ROWS, Integer.toString(checkpoint.getRows()));
+		if (checkpoint.getLastId() != null)
+		{
+			properties.setProperty(entity + LAST_ID, checkpoint.getLastId());
+		}
+		properties.setProperty(entity + COMPLETE, Boolean.toString(checkpoint.isComplete()));
+		properties.setProperty(entity + POSITION, Long.toString(position));
+		save();
+	}
+
+	/**
+	 * Removes the checkpoint file once the export is complete.
+	 */
+	synchronized void delete() throws IOException
+	{
+		Files.deleteIfExists(path);
+	}
+
+	private void save() throws IOException
+	{
+		final Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+		try (OutputStream out = Files.newOutputStream(temp))
+		{
+			properties.store(out, "EMX download checkpoints");
+		}
+		Files.move(temp, path, REPLACE_EXISTING, ATOMIC_MOVE);
+	}
+}
@@ -0,0 +1,50 @@
+package org.molgenis.downloader.emx;
+
+import org.molgenis.downloader.api.Checkpoint;
+import org.molgenis.downloader.api.EMXWriter;
+import org.molgenis.downloader.api.EntitySelection;
+import org.molgenis.downloader.api.ResumableDataStore;
+import org.molgenis.downloader.api.metadata.Entity;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records a checkpoint every few pages or seconds and at the end of the entity, once the rows up to the checkpoint
+ * have been written through to the data store. A resumed download repeats the pages after the last checkpoint, the
+ * rows written for them are cut off when the data store is resumed.
+ */
+class CheckpointingEntityConsumer extends EMXEntityConsumer
+{
+	static final int CHECKPOINT_PAGES = 10;
+	static final long CHECKPOINT_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+	private final String name;
+	private final ResumableDataStore sheet;
+	private final CheckpointFile checkpoints;
+	private int pages;
+	private long checkpointed = System.nanoTime();
+
+	CheckpointingEntityConsumer(final EMXWriter writer, final Entity entity, final EntitySelection selection,
+			final ResumableDataStore sheet, final boolean writeHeader, final CheckpointFile checkpoints)
+			throws IOException
+	{
+		super(writer, entity, selection, sheet, writeHeader);
+		this.name = entity.getFullName();
+		this.sheet = sheet;
+		this.checkpoints = checkpoints;
+	}
+
+	@Override
+	public void pageConsumed(final Checkpoint checkpoint) throws IOException
+	{
+		pages++;
+		final long now = System.nanoTime();
+		if (checkpoint.isComplete() || pages >= CHECKPOINT_PAGES || now - checkpointed >= CHECKPOINT_NANOS)
+		{
+			checkpoints.update(name, checkpoint, sheet.sync());
+			pages = 0;
+			checkpointed = now;
+		}
+	}
+}
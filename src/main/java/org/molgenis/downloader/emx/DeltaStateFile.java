@@ -0,0 +1,120 @@
+package org.molgenis.downloader.emx;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Properties;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Records per entity the last-modified attribute of an incremental export and its high-water mark: the largest
+ * value of the attribute that the rows exported so far are known to be up to date with. The mark of a new export is
+ * kept as pending until the export of the entity has completed, so that a failed export is repeated from the previous
+ * mark. The file is replaced atomically on every save.
+ */
+class DeltaStateFile
+{
+	private static final String ATTRIBUTE = ".attribute";
+	private static final String MARK = ".mark";
+	private static final String PENDING = ".pending";
+
+	private final Path path;
+	private final Properties properties = new Properties();
+
+	private DeltaStateFile(final Path path)
+	{
+		this.path = path;
+	}
+
+	/**
+	 * Loads the state of the previous exports, or creates an empty state if there were none.
+	 */
+	static DeltaStateFile load(final Path path) throws IOException
+	{
+		final DeltaStateFile file = new DeltaStateFile(path);
+		if (Files.exists(path))
+		{
+			try (InputStream in = Files.newInputStream(path))
+			{
+				file.properties.load(in);
+			}
+		}
+		return file;
+	}
+
+	/**
+	 * @return the mark of the last completed export of the entity, or null if the entity was not exported with this
+	 * attribute before
+	 */
+	synchronized String getMark(final String entity, final String attribute)
+	{
+		return attribute.equals(properties.getProperty(entity + ATTRIBUTE)) ?
+				properties.getProperty(entity + MARK) : null;
+	}
+
+	/**
+	 * @return the mark of an export of the entity that has not completed, or null if there is none
+	 */
+	synchronized String getPending(final String entity, final String attribute)
+	{
+		return attribute.equals(properties.getProperty(entity + ATTRIBUTE)) ?
+				properties.getProperty(entity + PENDING) : null;
+	}
+
+	/**
+	 * Records the mark of an export that has started. A different attribute than before discards the previous mark.
+	 *
+	 * @param pending the mark, or null if the entity has no rows with a value for the attribute
+	 */
+	synchronized void setPending(final String entity, final String attribute, final String pending)
+	{
+		if (!attribute.equals(properties.getProperty(entity + ATTRIBUTE)))
+		{
+			properties.remove(entity + MARK);
+			properties.setProperty(entity + ATTRIBUTE, attribute);
+		}
+		if (pending != null)
+		{
+			properties.setProperty(entity + PENDING, pending);
+		}
+		else
+		{
+			properties.remove(entity + PENDING);
+		}
+	}
+
+	/**
+	 * Makes the pending marks of the entities that were exported completely the marks to export the next changes
+	 * from. The pending marks of the other entities are kept, so that their next export starts from the old mark.
+	 *
+	 * @param entities the names of the entities whose rows were all exported
+	 */
+	synchronized void commit(final Collection<String> entities) throws IOException
+	{
+		for (final String entity : entities)
+		{
+			final String pending = properties.getProperty(entity + PENDING);
+			if (pending != null)
+			{
+				properties.setProperty(entity + MARK, pending);
+				properties.remove(entity + PENDING);
+			}
+		}
+		save();
+	}
+
+	synchronized void save() throws IOException
+	{
+		final Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+		try (OutputStream out = Files.newOutputStream(temp))
+		{
+			properties.store(out, "EMX incremental export state");
+		}
+		Files.move(temp, path, REPLACE_EXISTING, ATOMIC_MOVE);
+	}
+}
@@ -1,12 +1,23 @@
 package org.molgenis.downloader.emx;
 
+import org.molgenis.downloader.api.Checkpoint;
 import org.molgenis.downloader.api.EMXBackend;
 import org.molgenis.downloader.api.EntityConsumer;
+import org.molgenis.downloader.api.EntitySelection;
 import org.molgenis.downloader.api.MetadataConsumer;
 import org.molgenis.downloader.api.MolgenisClient;
+import org.molgenis.downloader.api.ThreadMode;
+import org.molgenis.downloader.api.metadata.Attribute;
+import org.molgenis.downloader.api.metadata.DataType;
+import org.molgenis.downloader.api.metadata.Entity;
 import org.molgenis.downloader.api.metadata.MolgenisVersion;
 import org.molgenis.downloader.emx.excel.ExcelBackend;
+import org.molgenis.downloader.emx.tsv.Codec;
+import org.molgenis.downloader.emx.tsv.CompressedDirectoryBackend;
+import org.molgenis.downloader.emx.tsv.DirectoryBackend;
 import org.molgenis.downloader.emx.tsv.ZipFileBackend;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
@@ -14,68 +25,449 @@ import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
 
 public class EMXClient
 {
+	private static final Logger LOG = LoggerFactory.getLogger(EMXClient.class);
 
 	private static final String XLSX = ".xlsx";
 	private static final String XLS = ".xls";
 	private final MolgenisClient molgenisClient;
 	private final List<Exception> exceptions;
+	private final int workers;
+	private int excelRowWindow = ExcelBackend.DEFAULT_ROW_WINDOW;
+	private boolean compressTempFiles;
+	private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+	private boolean stored;
+	private boolean directory;
+	private Codec codec;
+	private boolean resume;
+	private ThreadMode threadMode = ThreadMode.PLATFORM;
+	private Map<String, EntitySelection> selections = Collections.emptyMap();
+	private Path deltaState;
+	private Map<String, String> modifiedAttributes = Collections.emptyMap();
 
 	public EMXClient(final MolgenisClient client)
 	{
+		this(client, 1);
+	}
+
+	/**
+	 * @param client  the client to download the entities with
+	 * @param workers the number of entities to download in parallel
+	 */
+	public EMXClient(final MolgenisClient client, final int workers)
+	{
+		if (workers < 1)
+		{
+			throw new IllegalArgumentException("The number of workers should be at least 1");
+		}
 		this.molgenisClient = client;
 		this.exceptions = new ArrayList<>();
+		this.workers = workers;
+	}
+
+	/**
+	 * @param excelRowWindow the number of rows per sheet to keep in memory when writing an Excel file
+	 */
+	public void setExcelRowWindow(final int excelRowWindow)
+	{
+		this.excelRowWindow = excelRowWindow;
+	}
+
+	/**
+	 * @param compressTempFiles whether to compress the temporary files rows are flushed to when writing an Excel file
+	 */
+	public void setCompressTempFiles(final boolean compressTempFiles)
+	{
+		this.compressTempFiles = compressTempFiles;
+	}
+
+	/**
+	 * @param compressionLevel the compression level, 0-9, for the entries of a zip file
+	 */
+	public void setCompressionLevel(final int compressionLevel)
+	{
+		if (compressionLevel < Deflater.NO_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION)
+		{
+			throw new IllegalArgumentException("The compression level should be between 0 and 9");
+		}
+		this.compressionLevel = compressionLevel;
+	}
+
+	/**
+	 * @param stored whether to store the entries of a zip file without compression
+	 */
+	public void setStored(final boolean stored)
+	{
+		this.stored = stored;
+	}
+
+	/**
+	 * @param threadMode the kind of threads to download entities in parallel on
+	 */
+	public void setThreadMode(final ThreadMode threadMode)
+	{
+		this.threadMode = threadMode;
+	}
+
+	/**
+	 * @param directory whether to write one TSV file per entity into a directory instead of a single file
+	 */
+	public void setDirectory(final boolean directory)
+	{
+		this.directory = directory;
+	}
+
+	/**
+	 * @param codec the codec to compress each TSV file with when writing to a directory, or null to write uncompressed
+	 *              files
+	 */
+	public void setCodec(final Codec codec)
+	{
+		this.codec = codec;
+	}
+
+	/**
+	 * @param resume whether to continue an interrupted export from its checkpoints, instead of starting over. Only
+	 *               exports to a directory of uncompressed TSV files can be resumed.
+	 */
+	public void setResume(final boolean resume)
+	{
+		this.resume = resume;
+	}
+
+	/**
+	 * Selects the rows and attributes to download per entity. The attributes sheet only describes the selected
+	 * attributes, and entities that are only referred to by attributes that are not selected are left out.
+	 *
+	 * @param selections the selection per entity name, entities without a selection are downloaded completely
+	 */
+	public void setSelections(final Map<String, EntitySelection> selections)
+	{
+		this.selections = selections;
+	}
+
+	/**
+	 * Downloads only the rows that changed since the previous export with the same state file. The rows are
+	 * selected on a last-modified attribute of the entity: the DATE_TIME attribute with auto=true, or the attribute
+	 * given with {@link #setModifiedAttributes}. Entities without such an attribute are downloaded completely. Rows
+	 * that were deleted are not detected.
+	 *
+	 * @param deltaState the file that records the high-water mark of every entity, or null to download all rows
+	 */
+	public void setDeltaState(final Path deltaState)
+	{
+		this.deltaState = deltaState;
+	}
+
+	/**
+	 * @param modifiedAttributes the last-modified attribute per entity name, for entities where it cannot be
+	 *                           detected
+	 */
+	public void setModifiedAttributes(final Map<String, String> modifiedAttributes)
+	{
+		this.modifiedAttributes = modifiedAttributes;
 	}
 
 	public boolean downloadEMX(final List<String> entities, final Path path, final boolean includeMetadata,
 			boolean overwrite, MolgenisVersion version, Integer pageSize) throws Exception
 	{
+		final CheckpointFile checkpoints;
+		List<String> target;
+		final boolean hasExceptions;
+		final DeltaStateFile delta = deltaState != null ? DeltaStateFile.load(deltaState) : null;
+		final Set<String> completed = ConcurrentHashMap.newKeySet();
 		try (final EMXBackend backend = createBackend(path, overwrite))
 		{
+			checkpoints = createCheckpointFile(backend, path);
 			final EMXFileWriter writer = new EMXFileWriter(backend, version);
-			List<String> target = new ArrayList<>(entities);
+			target = new ArrayList<>(entities);
 			if (includeMetadata)
 			{
 				try (final MetadataConsumer consumer = writer.createMetadataConsumer())
 				{
-					final MetadataFilter filter = new MetadataFilter(entities, consumer, version);
+					final MetadataFilter filter = new MetadataFilter(entities, consumer, version, selections);
 					molgenisClient.streamMetadata(filter, version);
 					target.addAll(filter.getIncludedEntities());
 					target = target.stream().distinct().collect(Collectors.toList());
 				}
 			}
+			final Map<String, EntitySelection> rows = delta != null ? selectChanges(target, delta) : selections;
+			if (workers == 1 || target.size() == 1)
+			{
+				for (final String name : target)
+				{
+					downloadEntity(writer, name, pageSize, rows.get(name), checkpoints, completed);
+				}
+			}
+			else
+			{
+				downloadEntitiesInParallel(writer, target, pageSize, rows, checkpoints, completed);
+			}
+			exceptions.addAll(writer.getExceptions());
+			hasExceptions = writer.hasExceptions();
+		}
+		if (checkpoints != null)
+		{
+			finishCheckpoints(checkpoints, target, hasExceptions);
+		}
+		if (delta != null && !hasExceptions)
+		{
+			// a stream that fails is only logged, so only the entities that were streamed to the end are committed
+			delta.commit(completed);
+		}
+		return hasExceptions;
+	}
+
+	/**
+	 * Narrows the selection of every entity with a last-modified attribute to the rows changed since the mark of
+	 * the previous export, and records the largest value of the attribute before the download starts as the pending
+	 * mark. Rows that change during the download are therefore downloaded again by the next export. A pending mark
+	 * of an export that did not complete is kept, so that its changes are not skipped.
+	 *
+	 * @return the selection per entity name
+	 */
+	private Map<String, EntitySelection> selectChanges(final List<String> target, final DeltaStateFile delta)
+			throws IOException, URISyntaxException
+	{
+		final Map<String, EntitySelection> changes = new HashMap<>(selections);
+		for (final String name : target)
+		{
+			final Attribute attribute = getModifiedAttribute(molgenisClient.getEntity(name));
+			if (attribute == null)
+			{
+				LOG.info("No last-modified attribute found for {}, downloading all rows.", name);
+				continue;
+			}
+			final String mark = delta.getMark(name, attribute.getName());
+			String pending = delta.getPending(name, attribute.getName());
+			if (pending == null)
+			{
+				pending = molgenisClient.getMaxValue(name, attribute.getName(),
+						mark != null ? mark : getSmallestValue(attribute));
+				delta.setPending(name, attribute.getName(), pending != null ? pending : mark);
+			}
+			if (mark != null)
+			{
+				LOG.info("Downloading the rows of {} with {} after {}...", name, attribute.getName(), mark);
+				final EntitySelection selection = selections.get(name);
+				final String constraint = attribute.getName() + "=gt=" + EntitySelection.quote(mark);
+				changes.put(name,
+						selection != null ? selection.and(constraint) : new EntitySelection(null, constraint));
+			}
+		}
+		delta.save();
+		return changes;
+	}
+
+	/**
+	 * @return the attribute given for the entity, or else its only DATE_TIME attribute with auto=true, or the one
+	 * of those whose name says it records updates, or null if there is none
+	 */
+	private Attribute getModifiedAttribute(final Entity entity)
+	{
+		final String name = modifiedAttributes.get(entity.getFullName());
+		final List<Attribute> attributes = new ArrayList<>();
+		addAttributes(entity.getAttributes(), attributes);
+		if (name != null)
+		{
+			final Attribute attribute = attributes.stream()
+												  .filter(candidate -> candidate.getName().equals(name))
+												  .findFirst()
+												  .orElseThrow(() -> new IllegalArgumentException(
+														  "Unknown attribute " + name + " of " + entity.getFullName()));
+			if (!DataType.DATE_TIME.equals(attribute.getDataType()) && !DataType.DATE.equals(
+					attribute.getDataType()))
+			{
+				throw new IllegalArgumentException(
+						"The last-modified attribute " + name + " of " + entity.getFullName() + " is not a date");
+			}
+			return attribute;
+		}
+		final List<Attribute> candidates = attributes.stream()
+													 .filter(attribute -> DataType.DATE_TIME.equals(
+															 attribute.getDataType()) && attribute.isAuto())
+													 .collect(Collectors.toList());
+		if (candidates.size() == 1)
+		{
+			return candidates.get(0);
+		}
+		return candidates.stream()
+						 .filter(attribute -> attribute.getName().toLowerCase(Locale.ROOT).matches(".*(updat|modif).*"))
+						 .findFirst()
+						 .orElse(null);
+	}
+
+	private static void addAttributes(final Collection<Attribute> attributes, final List<Attribute> result)
+	{
+		for (final Attribute attribute : attributes)
+		{
+			if (DataType.COMPOUND.equals(attribute.getDataType()))
+			{
+				addAttributes(attribute.getParts(), result);
+			}
+			else
+			{
+				result.add(attribute);
+			}
+		}
+	}
+
+	/**
+	 * @return a value before any realistic date, to leave out the rows without a value when looking for the largest
+	 * value of the attribute
+	 */
+	private static String getSmallestValue(final Attribute attribute)
+	{
+		return DataType.DATE.equals(attribute.getDataType()) ? "1970-01-01" : "1970-01-01T00:00:00Z";
+	}
+
+	/**
+	 * @return the checkpoint file of the export, or null if the output cannot be resumed
+	 */
+	private CheckpointFile createCheckpointFile(final EMXBackend backend, final Path path) throws IOException
+	{
+		if (!backend.isResumable())
+		{
+			if (resume)
+			{
+				LOG.warn("Only exports to a directory of uncompressed TSV files can be resumed, starting over.");
+			}
+			return null;
+		}
+		final Path checkpointPath = CheckpointFile.pathFor(path);
+		return resume ? CheckpointFile.load(checkpointPath) : CheckpointFile.create(checkpointPath);
+	}
+
+	/**
+	 * Removes the checkpoint file if every entity has been downloaded completely, otherwise keeps it to resume from.
+	 */
+	private static void finishCheckpoints(final CheckpointFile checkpoints, final List<String> target,
+			final boolean hasExceptions) throws IOException
+	{
+		final boolean complete = !hasExceptions && target.stream().allMatch(name ->
+		{
+			final Checkpoint checkpoint = checkpoints.getCheckpoint(name);
+			return checkpoint != null && checkpoint.isComplete();
+		});
+		if (complete)
+		{
+			checkpoints.delete();
+		}
+		else
+		{
+			LOG.warn("Not all entities were downloaded completely, use the '--resume' option to continue the export.");
+		}
+	}
+
+	private void downloadEntitiesInParallel(final EMXFileWriter writer, final List<String> target,
+			Integer pageSize, final Map<String, EntitySelection> rows, final CheckpointFile checkpoints,
+			final Set<String> completed) throws InterruptedException
+	{
+		LOG.info("Downloading {} entities with {} workers...", target.size(), workers);
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.min(workers, target.size()),
+				threadMode.newThreadFactory("emx-download-"));
+		try
+		{
+			final List<Future<?>> downloads = new ArrayList<>();
 			for (final String name : target)
+			{
+				downloads.add(executor.submit(() ->
+				{
+					downloadEntity(writer, name, pageSize, rows.get(name), checkpoints, completed);
+					return null;
+				}));
+			}
+			for (final Future<?> download : downloads)
 			{
 				try
 				{
-					EntityConsumer consumer = writer.createConsumerForEntity(molgenisClient.getEntity(name));
-					molgenisClient.streamEntityData(name, consumer, pageSize);
+					download.get();
 				}
-				catch (final org.json.JSONException ex)
+				catch (final ExecutionException ex)
 				{
-					writer.addException(new IllegalArgumentException("entity: " + name + " does not exist", ex));
+					writer.addException(ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex);
 				}
 			}
-			exceptions.addAll(writer.getExceptions());
-			return writer.hasExceptions();
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * @param selection the rows and attributes to download, or null to download the entity completely
+	 * @param completed the names of the entities whose rows have all been consumed, which this entity is added to
+	 *                  once its last page has been consumed
+	 */
+	private void downloadEntity(final EMXFileWriter writer, final String name, Integer pageSize,
+			final EntitySelection selection, final CheckpointFile checkpoints, final Set<String> completed)
+			throws Exception
+	{
+		final Checkpoint checkpoint = checkpoints != null ? checkpoints.getCheckpoint(name) : null;
+		if (checkpoint != null && checkpoint.isComplete())
+		{
+			LOG.info("Skipping {}, it was downloaded completely before.", name);
+			completed.add(name);
+			return;
+		}
+		try (EntityConsumer consumer = createConsumer(writer, name, selection, checkpoints))
+		{
+			molgenisClient.streamEntityData(name, new CompletionListener(consumer, () -> completed.add(name)),
+					pageSize, checkpoint, selection);
+		}
+		catch (final org.json.JSONException ex)
+		{
+			writer.addException(new IllegalArgumentException("entity: " + name + " does not exist", ex));
 		}
 	}
 
+	private EntityConsumer createConsumer(final EMXFileWriter writer, final String name,
+			final EntitySelection selection, final CheckpointFile checkpoints) throws IOException, URISyntaxException
+	{
+		final Entity entity = molgenisClient.getEntity(name);
+		return checkpoints != null ? writer.createConsumerForEntity(entity, selection, checkpoints) :
+				writer.createConsumerForEntity(entity, selection);
+	}
+
 	public List<Exception> getExceptions()
 	{
 		return exceptions;
 	}
 
-	private EMXBackend createBackend(final Path path, boolean overwrite) throws IOException, URISyntaxException
+	private EMXBackend createBackend(final Path path, boolean overwrite) throws IOException
 	{
 		final EMXBackend backend;
-		if (path.toString().endsWith(XLSX) || path.toString().endsWith(XLS))
+		if (directory)
 		{
-			backend = new ExcelBackend(path, overwrite);
+			if (path.toFile().exists() && !overwrite && (!resume || codec != null))
+			{
+				throw new FileAlreadyExistsException(
+						String.format("Directory %s already exists, please use the '-o' option to overwrite.", path));
+			}
+			backend = codec != null ? new CompressedDirectoryBackend(path, codec, compressionLevel) :
+					new DirectoryBackend(path);
+		}
+		else if (path.toString().endsWith(XLSX) || path.toString().endsWith(XLS))
+		{
+			backend = new ExcelBackend(path, overwrite, excelRowWindow, compressTempFiles);
 		}
 		else
 		{
@@ -86,7 +478,7 @@ public class EMXClient
 				{
 					Files.delete(path);
 				}
-				backend = new ZipFileBackend(path);
+				backend = new ZipFileBackend(path, stored ? ZipEntry.STORED : ZipEntry.DEFLATED, compressionLevel);
 			}
 			else
 			{
@@ -96,4 +488,35 @@ public class EMXClient
 		}
 		return backend;
 	}
+
+	/**
+	 * Passes rows on to an entity consumer and reports when the checkpoint of the last page arrives.
+	 */
+	private static final class CompletionListener implements EntityConsumer
+	{
+		private final EntityConsumer consumer;
+		private final Runnable onComplete;
+
+		private CompletionListener(final EntityConsumer consumer, final Runnable onComplete)
+		{
+			this.consumer = consumer;
+			this.onComplete = onComplete;
+		}
+
+		@Override
+		public void accept(final Map<String, String> row)
+		{
+			consumer.accept(row);
+		}
+
+		@Override
+		public void pageConsumed(final Checkpoint checkpoint) throws IOException
+		{
+			consumer.pageConsumed(checkpoint);
+			if (checkpoint.isComplete())
+			{
+				onComplete.run();
+			}
+		}
+	}
 }
@@ -3,50 +3,72 @@ package org.molgenis.downloader.emx;
 import org.molgenis.downloader.api.EMXDataStore;
 import org.molgenis.downloader.api.EMXWriter;
 import org.molgenis.downloader.api.EntityConsumer;
+import org.molgenis.downloader.api.EntitySelection;
 import org.molgenis.downloader.api.metadata.Attribute;
 import org.molgenis.downloader.api.metadata.Entity;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
+/**
+ * Writes the rows of an entity to a data store. The columns are fixed when the consumer is created and every row is
+ * written through the same buffer, so writing a row does not allocate anything besides the trimmed values.
+ */
 class EMXEntityConsumer implements EntityConsumer
 {
-	private final List<Attribute> attributes;
+	private final String[] columns;
+	private final String[] row;
 	private final EMXDataStore sheet;
 	private final EMXWriter writer;
 
 	EMXEntityConsumer(final EMXWriter writer, final Entity entity) throws IOException
+	{
+		this(writer, entity, null);
+	}
+
+	/**
+	 * @param selection the attributes to write, or null to write all attributes
+	 */
+	EMXEntityConsumer(final EMXWriter writer, final Entity entity, final EntitySelection selection)
+			throws IOException
+	{
+		this(writer, entity, selection, writer.createDataStore(entity.getFullName()), true);
+	}
+
+	/**
+	 * @param selection   the attributes to write, or null to write all attributes
+	 * @param sheet       the data store to write the rows to
+	 * @param writeHeader whether to write the header, false when appending to rows written earlier
+	 */
+	EMXEntityConsumer(final EMXWriter writer, final Entity entity, final EntitySelection selection,
+			final EMXDataStore sheet, final boolean writeHeader) throws IOException
 	{
 		this.writer = writer;
-		attributes = getAttributes(entity);
-		final List<String> values = getAttributes().stream().map(Attribute::getName).collect(Collectors.toList());
+		columns = getAttributes(entity).stream()
+									   .filter(attribute -> selection == null || selection.includes(entity, attribute))
+									   .map(Attribute::getName)
+									   .toArray(String[]::new);
+		row = new String[columns.length];
 
-		sheet = writer.createDataStore(entity.getFullName());
-		sheet.writeRow(values);
+		this.sheet = sheet;
+		if (writeHeader)
+		{
+			sheet.writeRow(columns.clone());
+		}
 	}
 
 	@Override
 	public void accept(Map<String, String> data)
 	{
-		final List<String> values = new ArrayList<>();
-		for (int index = 0; index < getAttributeNames().size(); index++)
+		for (int index = 0; index < columns.length; index++)
 		{
-			final String value = data.get(getAttributeNames().get(index));
-			if (value != null && !value.trim().isEmpty())
-			{
-				values.add(value.trim());
-			}
-			else
-			{
-				values.add(null);
-			}
+			final String value = data.get(columns[index]);
+			final String trimmed = value != null ? value.trim() : null;
+			row[index] = trimmed != null && !trimmed.isEmpty() ? trimmed : null;
 		}
 		try
 		{
-			sheet.writeRow(values);
+			sheet.writeRow(row);
 		}
 		catch (final IOException ex)
 		{
@@ -54,14 +76,9 @@ class EMXEntityConsumer implements EntityConsumer
 		}
 	}
 
-	private List<Attribute> getAttributes()
-	{
-		return attributes;
-	}
-
-	private List<String> getAttributeNames()
+	@Override
+	public void close() throws IOException
 	{
-		return attributes.stream().map(Attribute::getName).collect(Collectors.toList());
+		sheet.close();
 	}
-
 }
@@ -6,6 +6,7 @@ import org.molgenis.downloader.api.metadata.MolgenisVersion;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class EMXFileWriter implements EMXWriter
@@ -18,7 +19,7 @@ public class EMXFileWriter implements EMXWriter
 	public EMXFileWriter(final EMXBackend store, final MolgenisVersion molgenisVersion)
 	{
 		version = molgenisVersion;
-		errors = new ArrayList<>();
+		errors = Collections.synchronizedList(new ArrayList<>());
 		backend = store;
 	}
 
@@ -28,6 +29,34 @@ public class EMXFileWriter implements EMXWriter
 		return new EMXEntityConsumer(this, entity);
 	}
 
+	/**
+	 * Creates a consumer that writes only the selected attributes of the entity.
+	 *
+	 * @param selection the attributes to write, or null to write all attributes
+	 */
+	EntityConsumer createConsumerForEntity(final Entity entity, final EntitySelection selection) throws IOException
+	{
+		return new EMXEntityConsumer(this, entity, selection);
+	}
+
+	/**
+	 * Creates a consumer that records its progress in the checkpoint file. If the entity has a checkpoint, the rows
+	 * are appended to the data store written up to that checkpoint. Checkpoints are only kept for backends that
+	 * {@link EMXBackend#isResumable() are resumable}.
+	 *
+	 * @param selection the attributes to write, or null to write all attributes
+	 */
+	EntityConsumer createConsumerForEntity(final Entity entity, final EntitySelection selection,
+			final CheckpointFile checkpoints) throws IOException
+	{
+		final ResumableBackend resumable = (ResumableBackend) backend;
+		final String name = entity.getFullName();
+		final boolean resume = checkpoints.getCheckpoint(name) != null;
+		final ResumableDataStore sheet = resume ? resumable.resumeDataStore(name,
+				checkpoints.getPosition(name)) : resumable.createDataStore(name);
+		return new CheckpointingEntityConsumer(this, entity, selection, sheet, !resume, checkpoints);
+	}
+
 	@Override
 	public MetadataConsumer createMetadataConsumer()
 	{
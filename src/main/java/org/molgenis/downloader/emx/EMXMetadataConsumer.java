@@ -68,11 +68,13 @@ class EMXMetadataConsumer implements MetadataConsumer
 	private <M extends Metadata> void writeMetadata(final String name, EntitySerializer serializer,
 			final Collection<M> metadata) throws IOException
 	{
-		EMXDataStore sheet = writer.createDataStore(name);
-		sheet.writeRow(serializer.fields());
-		for (final M m : metadata)
+		try (EMXDataStore sheet = writer.createDataStore(name))
 		{
-			sheet.writeRow(serializer.serialize(m));
+			sheet.writeRow(serializer.fields());
+			for (final M m : metadata)
+			{
+				sheet.writeRow(serializer.serialize(m));
+			}
 		}
 	}
 }
@@ -1,5 +1,6 @@
 package org.molgenis.downloader.emx;
 
+import org.molgenis.downloader.api.EntitySelection;
 import org.molgenis.downloader.api.MetadataRepository;
 import org.molgenis.downloader.api.metadata.*;
 import org.molgenis.downloader.api.metadata.Package;
@@ -7,56 +8,111 @@ import org.molgenis.downloader.api.metadata.Package;
 import java.util.*;
 import java.util.stream.Collectors;
 
+/**
+ * The requested entities of a repository, together with everything they depend on: their packages, base entities,
+ * attributes, tags and the entities their attributes refer to. The source repository creates every piece of metadata
+ * once per id, so the metadata that was visited is kept by identity instead of being hashed and compared on its
+ * contents, which for entities and attributes means walking everything they refer to.
+ */
 public class FilteredMetadataRepository implements MetadataRepository
 {
 
-	private final Set<Entity> entities;
-	private final Set<Attribute> attributes;
-	private final Set<Package> packages;
+	private static final Comparator<Entity> INDEPENDENT_ENTITY_ORDER = Comparator.comparing(
+			(Entity entity) -> !entity.isAbstractClass()).thenComparing(Entity::getFullName);
+
+	private final List<Entity> entities;
+	private final List<Attribute> attributes;
+	private final List<Package> packages;
 	private final Set<Tag> tags;
 	private final Collection<Language> languages;
+	private final Map<String, EntitySelection> selections;
+	private final Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
 
 	public FilteredMetadataRepository(final MetadataRepository source, final List<String> entities)
 	{
-		this.entities = new LinkedHashSet<>();
-		attributes = new LinkedHashSet<>();
-		packages = new LinkedHashSet<>();
+		this(source, entities, Collections.emptyMap());
+	}
+
+	/**
+	 * @param selections the selected attributes per entity name. Attributes that are not selected are left out,
+	 *                   together with the entities that only they refer to.
+	 */
+	public FilteredMetadataRepository(final MetadataRepository source, final List<String> entities,
+			final Map<String, EntitySelection> selections)
+	{
+		this.selections = selections;
+		this.entities = new ArrayList<>();
+		attributes = new ArrayList<>();
+		packages = new ArrayList<>();
 		tags = new LinkedHashSet<>();
 		languages = source.getLanguages();
 
-		source.getEntities().stream().filter((ent) -> entities.contains(ent.getFullName())).forEach(this::traverse);
+		final Set<String> requested = new HashSet<>(entities);
+		traverse(source.getEntities()
+					   .stream()
+					   .filter(ent -> requested.contains(ent.getFullName()))
+					   .collect(Collectors.toList()));
 	}
 
-	private void traverse(final Entity entity)
+	/**
+	 * Walks the dependencies of the entities with a work list rather than recursion, so that long chains of
+	 * references cannot overflow the stack.
+	 */
+	private void traverse(final Collection<Entity> requested)
 	{
-		if (entity != null && !entities.contains(entity))
+		final Deque<Entity> pending = new ArrayDeque<>(requested);
+		while (!pending.isEmpty())
 		{
+			final Entity entity = pending.pop();
+			if (!visited.add(entity))
+			{
+				continue;
+			}
 			entities.add(entity);
 			tags.addAll(entity.getTags());
 			traverse(entity.getPackage());
-			traverse(entity.getBase());
-			entity.getAttributes().forEach(this::traverse);
+			if (entity.getBase() != null)
+			{
+				pending.push(entity.getBase());
+			}
+			final EntitySelection selection = selections.get(entity.getFullName());
+			for (final Attribute att : entity.getAttributes())
+			{
+				if (selection == null || selection.includes(entity, att))
+				{
+					traverse(att, entity, selection, pending);
+				}
+			}
 		}
 	}
 
 	private void traverse(final Package pkg)
 	{
-		if (pkg != null && !packages.contains(pkg))
+		for (Package current = pkg; current != null && visited.add(current); current = current.getParent())
 		{
-			packages.add(pkg);
-			tags.addAll(pkg.getTags());
-			traverse(pkg.getParent());
+			packages.add(current);
+			tags.addAll(current.getTags());
 		}
 	}
 
-	private void traverse(final Attribute att)
+	private void traverse(final Attribute att, final Entity entity, final EntitySelection selection,
+			final Deque<Entity> pending)
 	{
-		if (att != null && !attributes.contains(att))
+		if (att != null && visited.add(att))
 		{
 			attributes.add(att);
 			tags.addAll(att.getTags());
-			att.getParts().forEach(this::traverse);
-			traverse(att.getRefEntity());
+			for (final Attribute part : att.getParts())
+			{
+				if (selection == null || selection.includes(entity, part))
+				{
+					traverse(part, entity, selection, pending);
+				}
+			}
+			if (att.getRefEntity() != null)
+			{
+				pending.push(att.getRefEntity());
+			}
 		}
 	}
 
@@ -71,22 +127,46 @@ public class FilteredMetadataRepository implements MetadataRepository
 	@Override
 	public final Collection<Entity> getEntities()
 	{
-		return entities.stream().sorted((x, y) ->
+		return sortTopologically(entities);
+	}
+
+	/**
+	 * Orders the entities so that every entity comes after the entity it extends. Entities that do not depend on
+	 * each other come abstract entities first, then by name.
+	 */
+	static List<Entity> sortTopologically(final Collection<Entity> entities)
+	{
+		final Set<Entity> included = Collections.newSetFromMap(new IdentityHashMap<>());
+		included.addAll(entities);
+		final Map<Entity, List<Entity>> children = new IdentityHashMap<>();
+		final PriorityQueue<Entity> ready = new PriorityQueue<>(INDEPENDENT_ENTITY_ORDER);
+		for (final Entity entity : entities)
 		{
-			if (x.isParentOf(y))
-			{
-				return -1;
-			}
-			if (y.isParentOf(x))
+			final Entity base = entity.getBase();
+			if (base != null && base != entity && included.contains(base))
 			{
-				return 1;
+				children.computeIfAbsent(base, key -> new ArrayList<>()).add(entity);
 			}
-			if (x.isAbstractClass() != y.isAbstractClass())
+			else
 			{
-				return x.isAbstractClass() ? -1 : 1;
+				ready.add(entity);
 			}
-			return x.getFullName().compareTo(y.getFullName());
-		}).collect(Collectors.toList());
+		}
+
+		final List<Entity> sorted = new ArrayList<>(entities.size());
+		while (!ready.isEmpty())
+		{
+			final Entity entity = ready.poll();
+			sorted.add(entity);
+			ready.addAll(children.getOrDefault(entity, Collections.emptyList()));
+		}
+		if (sorted.size() < included.size())
+		{
+			// entities that extend each other in a cycle have no valid order, they are added at the end
+			sorted.forEach(included::remove);
+			included.stream().sorted(INDEPENDENT_ENTITY_ORDER).forEach(sorted::add);
+		}
+		return sorted;
 	}
 
 	@Override
@@ -1,11 +1,14 @@
 package org.molgenis.downloader.emx;
 
+import org.molgenis.downloader.api.EntitySelection;
 import org.molgenis.downloader.api.MetadataConsumer;
 import org.molgenis.downloader.api.MetadataRepository;
 import org.molgenis.downloader.api.metadata.Entity;
 import org.molgenis.downloader.api.metadata.MolgenisVersion;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import static java.util.stream.Collectors.toList;
 import static org.molgenis.downloader.api.metadata.MolgenisVersion.VERSION_3;
@@ -15,20 +18,31 @@ class MetadataFilter implements MetadataConsumer
 
 	private final MetadataConsumer consumer;
 	private final List<String> entities;
+	private final Map<String, EntitySelection> selections;
 	private MetadataRepository target;
 	private MolgenisVersion version;
 
 	public MetadataFilter(final List<String> entities, final MetadataConsumer consumer, MolgenisVersion version)
+	{
+		this(entities, consumer, version, Collections.emptyMap());
+	}
+
+	/**
+	 * @param selections the selected attributes per entity name, entities without a selection keep all attributes
+	 */
+	public MetadataFilter(final List<String> entities, final MetadataConsumer consumer, MolgenisVersion version,
+			final Map<String, EntitySelection> selections)
 	{
 		this.entities = entities;
 		this.consumer = consumer;
 		this.version = version;
+		this.selections = selections;
 	}
 
 	@Override
 	public void accept(final MetadataRepository source)
 	{
-		target = new FilteredMetadataRepository(source, entities);
+		target = new FilteredMetadataRepository(source, entities, selections);
 		consumer.accept(target);
 	}
 
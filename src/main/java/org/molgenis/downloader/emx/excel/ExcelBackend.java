@@ -1,40 +1,69 @@
 package org.molgenis.downloader.emx.excel;
 
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.molgenis.downloader.api.EMXBackend;
 import org.molgenis.downloader.api.EMXDataStore;
 
+import java.io.OutputStream;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
+/**
+ * Writes the data stores as sheets of a streaming workbook. Only a window of the most recent rows of each sheet is kept
+ * in memory, older rows are flushed to temporary files that are assembled into the workbook on close.
+ */
 public class ExcelBackend implements EMXBackend
 {
+	public static final int DEFAULT_ROW_WINDOW = SXSSFWorkbook.DEFAULT_WINDOW_SIZE;
 
-	private final Workbook workbook;
+	private final SXSSFWorkbook workbook;
 	private final Path path;
 
 	public ExcelBackend(final Path path, boolean overwrite) throws FileAlreadyExistsException
+	{
+		this(path, overwrite, DEFAULT_ROW_WINDOW, false);
+	}
+
+	/**
+	 * @param rowWindow         the number of rows per sheet to keep in memory before they are flushed to disk
+	 * @param compressTempFiles whether to gzip the temporary files the flushed rows are written to
+	 */
+	public ExcelBackend(final Path path, boolean overwrite, int rowWindow, boolean compressTempFiles)
+			throws FileAlreadyExistsException
 	{
 		if (path.toFile().exists() && !overwrite)
 		{
 			throw new FileAlreadyExistsException(path.toString(), null, "File already exists.");
 		}
-		workbook = new XSSFWorkbook();
+		if (rowWindow < 1)
+		{
+			throw new IllegalArgumentException("The row window should be at least 1");
+		}
+		workbook = new SXSSFWorkbook(null, rowWindow, compressTempFiles);
 		this.path = path;
 	}
 
 	@Override
 	public void close() throws Exception
 	{
-		workbook.write(Files.newOutputStream(path));
-		workbook.close();
+		try (OutputStream outputStream = Files.newOutputStream(path))
+		{
+			workbook.write(outputStream);
+		}
+		finally
+		{
+			workbook.dispose();
+			workbook.close();
+		}
 	}
 
 	@Override
 	public EMXDataStore createDataStore(String name)
 	{
-		return new ExcelSheet(workbook, name);
+		synchronized (workbook)
+		{
+			return new ExcelSheet(workbook, name);
+		}
 	}
 }
@@ -9,14 +9,20 @@ import org.molgenis.downloader.api.EMXDataStore;
 import java.io.IOException;
 import java.util.List;
 
+/**
+ * Sheets of one workbook share state, so all writes are synchronized on the workbook. Rows are never read back after
+ * they are written, so a streaming workbook can flush them to disk as they go.
+ */
 public class ExcelSheet implements EMXDataStore
 {
 
+	private final Workbook workbook;
 	private final Sheet sheet;
 	private int rowNumber;
 
 	public ExcelSheet(final Workbook workbook, final String name)
 	{
+		this.workbook = workbook;
 		sheet = workbook.createSheet(name);
 		rowNumber = 0;
 	}
@@ -24,15 +30,18 @@ public class ExcelSheet implements EMXDataStore
 	@Override
 	public void writeRow(List<String> values) throws IOException
 	{
-		final Row row = sheet.createRow(rowNumber);
-		rowNumber++;
-		for (int index = 0; index < values.size(); index++)
+		synchronized (workbook)
 		{
-			final String record = values.get(index);
-			if (record != null && !record.trim().isEmpty())
+			final Row row = sheet.createRow(rowNumber);
+			rowNumber++;
+			for (int index = 0; index < values.size(); index++)
 			{
-				final Cell cell = row.createCell(index);
-				cell.setCellValue(record.trim());
+				final String record = values.get(index);
+				if (record != null && !record.trim().isEmpty())
+				{
+					final Cell cell = row.createCell(index);
+					cell.setCellValue(record.trim());
+				}
 			}
 		}
 	}
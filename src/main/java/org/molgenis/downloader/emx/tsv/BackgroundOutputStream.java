@@ -0,0 +1,139 @@
+package org.molgenis.downloader.emx.tsv;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the written bytes in chunks and hands them over to a background thread that writes them to the underlying
+ * stream. Used to compress files without stalling the thread that produces the rows. At most a few chunks are waiting
+ * to be written at any time; when the background thread falls behind, writes block.
+ */
+class BackgroundOutputStream extends OutputStream
+{
+	private static final int CHUNK_SIZE = 1 << 16;
+	private static final int QUEUED_CHUNKS = 4;
+	private static final byte[] END = new byte[0];
+
+	private final BlockingQueue<byte[]> chunks;
+	private final Future<?> writer;
+	private byte[] chunk;
+	private int count;
+	private boolean closed;
+
+	BackgroundOutputStream(final OutputStream out, final ExecutorService executor)
+	{
+		chunks = new ArrayBlockingQueue<>(QUEUED_CHUNKS);
+		chunk = new byte[CHUNK_SIZE];
+		writer = executor.submit(() ->
+		{
+			try (OutputStream target = out)
+			{
+				for (byte[] next = chunks.take(); next != END; next = chunks.take())
+				{
+					target.write(next);
+				}
+			}
+			return null;
+		});
+	}
+
+	@Override
+	public void write(final int b) throws IOException
+	{
+		if (count == chunk.length)
+		{
+			handOver();
+		}
+		chunk[count++] = (byte) b;
+	}
+
+	@Override
+	public void write(final byte[] b, int off, int len) throws IOException
+	{
+		while (len > 0)
+		{
+			if (count == chunk.length)
+			{
+				handOver();
+			}
+			final int length = Math.min(len, chunk.length - count);
+			System.arraycopy(b, off, chunk, count, length);
+			count += length;
+			off += length;
+			len -= length;
+		}
+	}
+
+	@Override
+	public void flush() throws IOException
+	{
+		if (count > 0)
+		{
+			handOver();
+		}
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		if (!closed)
+		{
+			closed = true;
+			flush();
+			put(END);
+			try
+			{
+				writer.get();
+			}
+			catch (final InterruptedException ex)
+			{
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}
+			catch (final ExecutionException ex)
+			{
+				throw new IOException("Error writing in the background", ex.getCause());
+			}
+		}
+	}
+
+	private void handOver() throws IOException
+	{
+		put(count == chunk.length ? chunk : Arrays.copyOf(chunk, count));
+		chunk = new byte[CHUNK_SIZE];
+		count = 0;
+	}
+
+	private void put(final byte[] bytes) throws IOException
+	{
+		try
+		{
+			while (!chunks.offer(bytes, 1, TimeUnit.SECONDS))
+			{
+				if (writer.isDone())
+				{
+					writer.get();
+					throw new IOException("The background writer stopped unexpectedly");
+				}
+			}
+		}
+		catch (final InterruptedException ex)
+		{
+			writer.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+		catch (final ExecutionException ex)
+		{
+			throw new IOException("Error writing in the background", ex.getCause());
+		}
+	}
+}
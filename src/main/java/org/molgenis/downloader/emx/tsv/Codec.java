@@ -0,0 +1,75 @@
+package org.molgenis.downloader.emx.tsv;
+
+import org.apache.commons.compress.compressors.lz4.BlockLZ4CompressorOutputStream;
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorOutputStream;
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorOutputStream.BlockSize;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compression formats for TSV files that are written to a directory.
+ */
+public enum Codec
+{
+	GZIP(".gz")
+	{
+		@Override
+		OutputStream compress(final OutputStream out, final int level) throws IOException
+		{
+			return new LevelGZIPOutputStream(out, level);
+		}
+	},
+
+	/**
+	 * LZ4 frame format. Levels up to 5 favour speed, higher levels favour the compression ratio.
+	 */
+	LZ4(".lz4")
+	{
+		@Override
+		OutputStream compress(final OutputStream out, final int level) throws IOException
+		{
+			final boolean ratio = level > 5 || level == Deflater.DEFAULT_COMPRESSION;
+			return new FramedLZ4CompressorOutputStream(out,
+					new FramedLZ4CompressorOutputStream.Parameters(BlockSize.M4, true, false, false,
+							ratio ? BlockLZ4CompressorOutputStream.createParameterBuilder()
+																  .tunedForCompressionRatio()
+																  .build() :
+									BlockLZ4CompressorOutputStream.createParameterBuilder().tunedForSpeed().build()));
+		}
+	};
+
+	private final String extension;
+
+	Codec(final String extension)
+	{
+		this.extension = extension;
+	}
+
+	public String getExtension()
+	{
+		return extension;
+	}
+
+	/**
+	 * @param level compression level 0-9, or {@link Deflater#DEFAULT_COMPRESSION}
+	 */
+	abstract OutputStream compress(final OutputStream out, final int level) throws IOException;
+
+	public static Codec from(final String text)
+	{
+		return Codec.valueOf(text.toUpperCase(Locale.ROOT));
+	}
+
+	private static class LevelGZIPOutputStream extends GZIPOutputStream
+	{
+		private LevelGZIPOutputStream(final OutputStream out, final int level) throws IOException
+		{
+			super(out, DirectoryBackend.BUFFER_SIZE);
+			def.setLevel(level);
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package org.molgenis.downloader.emx.tsv;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Writes every data store to its own compressed TSV file in a directory, so that the files can be decompressed
+ * independently of each other. Each file is compressed on its own background thread.
+ */
+public class CompressedDirectoryBackend extends DirectoryBackend
+{
+	private final Codec codec;
+	private final int level;
+	private final ExecutorService executor;
+
+	/**
+	 * @param level compression level 0-9, or {@link java.util.zip.Deflater#DEFAULT_COMPRESSION}
+	 */
+	public CompressedDirectoryBackend(final Path directory, final Codec codec, final int level) throws IOException
+	{
+		super(directory, TSVFile.TSV + codec.getExtension());
+		this.codec = codec;
+		this.level = level;
+		executor = Executors.newCachedThreadPool(
+				new ThreadFactoryBuilder().setNameFormat("tsv-compress-%d").setDaemon(true).build());
+	}
+
+	@Override
+	OutputStream open(final FileChannel channel) throws IOException
+	{
+		return new BackgroundOutputStream(codec.compress(super.open(channel), level), executor);
+	}
+
+	/**
+	 * Compressed files cannot be resumed, because the compressor state at a checkpoint is not stored.
+	 */
+	@Override
+	public boolean isResumable()
+	{
+		return false;
+	}
+
+	@Override
+	public synchronized void close() throws Exception
+	{
+		try
+		{
+			super.close();
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package org.molgenis.downloader.emx.tsv;
+
+import org.molgenis.downloader.api.ResumableBackend;
+import org.molgenis.downloader.api.ResumableDataStore;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Writes every data store to its own TSV file in a directory. The files are independent of each other, so data stores
+ * can be written in parallel and there is no archive to finish when the export is done.
+ */
+public class DirectoryBackend implements ResumableBackend
+{
+	static final int BUFFER_SIZE = 1 << 16;
+
+	private final Path directory;
+	private final String extension;
+	private final List<TSVFile> files;
+
+	public DirectoryBackend(final Path directory) throws IOException
+	{
+		this(directory, TSVFile.TSV);
+	}
+
+	DirectoryBackend(final Path directory, final String extension) throws IOException
+	{
+		this.directory = Files.createDirectories(directory);
+		this.extension = extension;
+		files = new ArrayList<>();
+	}
+
+	@Override
+	public synchronized ResumableDataStore createDataStore(final String name) throws IOException
+	{
+		return add(FileChannel.open(directory.resolve(name + extension), CREATE, WRITE, TRUNCATE_EXISTING));
+	}
+
+	@Override
+	public synchronized ResumableDataStore resumeDataStore(final String name, final long position) throws IOException
+	{
+		final FileChannel channel = FileChannel.open(directory.resolve(name + extension), WRITE);
+		try
+		{
+			if (channel.size() < position)
+			{
+				throw new IOException(
+						String.format("Cannot resume %s, the file is shorter than the checkpoint.", name + extension));
+			}
+			channel.truncate(position);
+			channel.position(position);
+		}
+		catch (final IOException ex)
+		{
+			channel.close();
+			throw ex;
+		}
+		return add(channel);
+	}
+
+	private ResumableDataStore add(final FileChannel channel) throws IOException
+	{
+		final ResumableTSVFile file = new ResumableTSVFile(new OutputStreamWriter(open(channel), UTF_8), channel);
+		files.add(file);
+		return file;
+	}
+
+	/**
+	 * Opens the stream that the TSV file in the given channel is written to.
+	 */
+	OutputStream open(final FileChannel channel) throws IOException
+	{
+		return new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+	}
+
+	@Override
+	public synchronized void close() throws Exception
+	{
+		for (TSVFile file : files)
+		{
+			file.close();
+		}
+	}
+}
@@ -0,0 +1,33 @@
+package org.molgenis.downloader.emx.tsv;
+
+import org.molgenis.downloader.api.ResumableDataStore;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A TSV file that reports the position after its last row, so that an interrupted export can be resumed from there.
+ */
+class ResumableTSVFile extends TSVFile implements ResumableDataStore
+{
+	private final FileChannel channel;
+
+	/**
+	 * @param channel the file that the writer writes to
+	 */
+	ResumableTSVFile(final Writer writer, final FileChannel channel)
+	{
+		super(writer);
+		this.channel = channel;
+	}
+
+	@Override
+	public long sync() throws IOException
+	{
+		flush();
+		// the checkpoint that refers to the position is only saved once the rows before it are on disk
+		channel.force(false);
+		return channel.position();
+	}
+}
@@ -4,35 +4,45 @@ import au.com.bytecode.opencsv.CSVWriter;
 import org.molgenis.downloader.api.EMXDataStore;
 
 import java.io.IOException;
-import java.nio.file.FileSystem;
-import java.nio.file.Files;
+import java.io.Writer;
 import java.util.List;
 
 /**
  * @author david
  */
-public class TSVFile implements AutoCloseable, EMXDataStore
+public class TSVFile implements EMXDataStore
 {
 
-	private static final String TSV = ".tsv";
+	static final String TSV = ".tsv";
 	private static final char TAB = '\t';
 
 	private final CSVWriter csvWriter;
 
-	public TSVFile(final FileSystem fs, final String name) throws IOException
+	public TSVFile(final Writer writer)
 	{
-		csvWriter = new CSVWriter(Files.newBufferedWriter(fs.getPath("/" + name + TSV)), TAB);
+		csvWriter = new CSVWriter(writer, TAB);
 	}
 
 	@Override
-	public void close() throws Exception
+	public void close() throws IOException
 	{
 		csvWriter.close();
 	}
 
+	void flush() throws IOException
+	{
+		csvWriter.flush();
+	}
+
 	@Override
 	public void writeRow(final List<String> values) throws IOException
 	{
 		csvWriter.writeNext(values.toArray(new String[values.size()]));
 	}
+
+	@Override
+	public void writeRow(final String[] values)
+	{
+		csvWriter.writeNext(values);
+	}
 }
@@ -1,58 +1,208 @@
 package org.molgenis.downloader.emx.tsv;
 
-import org.apache.commons.lang3.SystemUtils;
 import org.molgenis.downloader.api.EMXBackend;
 import org.molgenis.downloader.api.EMXDataStore;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.IOException;
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.FileSystem;
-import java.nio.file.FileSystems;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Writes every data store as a TSV entry of a zip file, in a single pass. A data store is written straight into the zip
+ * when no other entry is being written. Data stores that are written concurrently are spooled to a temporary file and
+ * copied into the zip as soon as it is free again.
+ */
 public class ZipFileBackend implements EMXBackend
 {
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final ZipOutputStream zip;
+	private final int method;
+	private final Set<Entry> open;
+	private final Deque<Entry> spooled;
+	private Entry direct;
 
-	private FileSystem fs;
-	private final List<TSVFile> files;
+	public ZipFileBackend(final Path path) throws IOException
+	{
+		this(path, ZipEntry.DEFLATED, Deflater.DEFAULT_COMPRESSION);
+	}
 
-	public ZipFileBackend(final Path path) throws IOException, URISyntaxException
+	/**
+	 * @param method {@link ZipEntry#DEFLATED} or {@link ZipEntry#STORED}. Stored entries need their size and checksum
+	 *               up front, so they are always spooled to a temporary file first.
+	 * @param level  the compression level for deflated entries, 0-9 or {@link Deflater#DEFAULT_COMPRESSION}
+	 */
+	public ZipFileBackend(final Path path, final int method, final int level) throws IOException
 	{
-		files = new ArrayList<>();
-		final Map<String, String> env = new HashMap<>();
-		env.put("create", "true");
-		env.put("encoding", StandardCharsets.UTF_8.toString());
-		String pathString = path.toFile().getAbsolutePath().toString();
-		if (SystemUtils.IS_OS_WINDOWS)
-		{
-			pathString = pathString.substring(2).replace("\\", "/");
-		}
-		final String uriString = "jar:file:" + pathString;
-		URI uri = new URI(uriString);
-		fs = FileSystems.newFileSystem(uri, env);
+		zip = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(path), BUFFER_SIZE), UTF_8);
+		zip.setMethod(method);
+		if (method == ZipEntry.DEFLATED)
+		{
+			zip.setLevel(level);
+		}
+		this.method = method;
+		open = new LinkedHashSet<>();
+		spooled = new ArrayDeque<>();
 	}
 
 	@Override
-	public EMXDataStore createDataStore(final String name) throws IOException
+	public synchronized EMXDataStore createDataStore(final String name) throws IOException
 	{
-		final TSVFile sheet = new TSVFile(fs, name);
-		files.add(sheet);
-		return sheet;
+		final Entry entry;
+		if (direct == null && method == ZipEntry.DEFLATED)
+		{
+			zip.putNextEntry(new ZipEntry(name + TSVFile.TSV));
+			entry = new Entry(name, null, zip);
+			direct = entry;
+		}
+		else
+		{
+			final Path spool = Files.createTempFile("emx-", TSVFile.TSV);
+			entry = new Entry(name, spool, new BufferedOutputStream(Files.newOutputStream(spool), BUFFER_SIZE));
+		}
+		open.add(entry);
+		return entry.file;
 	}
 
 	@Override
-	public void close() throws Exception
+	public synchronized void close() throws Exception
+	{
+		try
+		{
+			for (Entry entry : new ArrayList<>(open))
+			{
+				entry.file.close();
+			}
+			copySpooledEntries();
+		}
+		finally
+		{
+			for (Entry entry : spooled)
+			{
+				Files.deleteIfExists(entry.spool);
+			}
+			zip.close();
+		}
+	}
+
+	private synchronized void entryClosed(final Entry entry) throws IOException
+	{
+		open.remove(entry);
+		if (entry == direct)
+		{
+			zip.closeEntry();
+			direct = null;
+		}
+		else
+		{
+			spooled.add(entry);
+		}
+		if (direct == null)
+		{
+			copySpooledEntries();
+		}
+	}
+
+	private void copySpooledEntries() throws IOException
 	{
-		for (TSVFile file : files)
+		while (!spooled.isEmpty())
+		{
+			final Entry entry = spooled.peek();
+			final ZipEntry zipEntry = new ZipEntry(entry.name + TSVFile.TSV);
+			if (method == ZipEntry.STORED)
+			{
+				zipEntry.setSize(entry.size);
+				zipEntry.setCompressedSize(entry.size);
+				zipEntry.setCrc(entry.crc.getValue());
+			}
+			zip.putNextEntry(zipEntry);
+			Files.copy(entry.spool, zip);
+			zip.closeEntry();
+			Files.delete(entry.spool);
+			spooled.poll();
+		}
+	}
+
+	/**
+	 * The bytes of one data store, written either into the zip or into a spool file.
+	 */
+	private final class Entry extends OutputStream
+	{
+		private final String name;
+		private final Path spool;
+		private final OutputStream out;
+		private final CRC32 crc;
+		private final TSVFile file;
+		private long size;
+		private boolean closed;
+
+		private Entry(final String name, final Path spool, final OutputStream out)
+		{
+			this.name = name;
+			this.spool = spool;
+			this.out = out;
+			crc = new CRC32();
+			file = new TSVFile(new BufferedWriter(new OutputStreamWriter(this, UTF_8), BUFFER_SIZE));
+		}
+
+		@Override
+		public void write(final int b) throws IOException
+		{
+			out.write(b);
+			if (spool != null)
+			{
+				crc.update(b);
+				size++;
+			}
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len) throws IOException
+		{
+			out.write(b, off, len);
+			if (spool != null)
+			{
+				crc.update(b, off, len);
+				size += len;
+			}
+		}
+
+		@Override
+		public void flush() throws IOException
+		{
+			if (spool != null)
+			{
+				out.flush();
+			}
+		}
+
+		@Override
+		public void close() throws IOException
 		{
-			file.close();
+			if (!closed)
+			{
+				closed = true;
+				if (spool != null)
+				{
+					out.close();
+				}
+				entryClosed(this);
+			}
 		}
-		fs.close();
 	}
 }
@@ -0,0 +1,65 @@
+package org.molgenis.downloader.api;
+
+import org.molgenis.downloader.api.metadata.Attribute;
+import org.molgenis.downloader.api.metadata.DataType;
+import org.molgenis.downloader.api.metadata.Entity;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+
+import static java.util.Arrays.asList;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class EntitySelectionTest
+{
+	@Test
+	public void includesTest()
+	{
+		Attribute a = Attribute.createAttribute("a", "a").setDataType(DataType.STRING);
+		Attribute inner = Attribute.createAttribute("inner", "inner").setDataType(DataType.COMPOUND).addPart(a);
+		Attribute outer = Attribute.createAttribute("outer", "outer").setDataType(DataType.COMPOUND).addPart(inner);
+		Attribute b = Attribute.createAttribute("b", "b").setDataType(DataType.STRING);
+		Entity entity = createEntity(outer, b);
+
+		EntitySelection compound = new EntitySelection(Collections.singletonList("outer"), null);
+		assertTrue(compound.includes(entity, entity.getIdAttribute()));
+		assertTrue(compound.includes(entity, inner));
+		assertTrue(compound.includes(entity, a));
+		assertFalse(compound.includes(entity, b));
+
+		EntitySelection part = new EntitySelection(Collections.singletonList("a"), null);
+		assertTrue(part.includes(entity, outer));
+		assertTrue(part.includes(entity, inner));
+		assertFalse(part.includes(entity, b));
+	}
+
+	@Test
+	public void getUnknownAttributesTest()
+	{
+		Attribute a = Attribute.createAttribute("a", "a").setDataType(DataType.STRING);
+		Entity entity = createEntity(Attribute.createAttribute("group", "group")
+											  .setDataType(DataType.COMPOUND)
+											  .addPart(a));
+
+		assertEquals(new EntitySelection(asList("group", "a", "id"), null).getUnknownAttributes(entity),
+				Collections.emptySet());
+		assertEquals(new EntitySelection(asList("a", "typo"), null).getUnknownAttributes(entity),
+				Collections.singleton("typo"));
+		assertEquals(new EntitySelection(null, "a==1").getUnknownAttributes(entity), Collections.emptySet());
+	}
+
+	private static Entity createEntity(final Attribute... attributes)
+	{
+		Entity entity = new Entity("pkg_entity");
+		Attribute id = Attribute.createAttribute("id", "id").setDataType(DataType.STRING);
+		entity.addAttribute(id);
+		entity.setIdAttribute(id);
+		for (Attribute attribute : attributes)
+		{
+			entity.addAttribute(attribute);
+		}
+		return entity;
+	}
+}
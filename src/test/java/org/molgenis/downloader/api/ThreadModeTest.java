@@ -0,0 +1,45 @@
+package org.molgenis.downloader.api;
+
+import org.testng.annotations.Test;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class ThreadModeTest
+{
+	@Test
+	public void fromTest()
+	{
+		assertEquals(ThreadMode.from("virtual"), ThreadMode.VIRTUAL);
+		assertEquals(ThreadMode.from("PLATFORM"), ThreadMode.PLATFORM);
+	}
+
+	@Test
+	public void platformThreadFactoryTest() throws Exception
+	{
+		Thread thread = run(ThreadMode.PLATFORM.newThreadFactory("test-"));
+		assertEquals(thread.getName(), "test-0");
+		assertTrue(thread.isDaemon());
+	}
+
+	@Test
+	public void virtualThreadFactoryTest() throws Exception
+	{
+		// falls back to platform threads on runtimes without virtual threads
+		Thread thread = run(ThreadMode.VIRTUAL.newThreadFactory("test-"));
+		assertEquals(thread.getName(), "test-0");
+		assertTrue(thread.isDaemon());
+	}
+
+	private static Thread run(ThreadFactory factory) throws InterruptedException
+	{
+		AtomicReference<Thread> current = new AtomicReference<>();
+		Thread thread = factory.newThread(() -> current.set(Thread.currentThread()));
+		thread.start();
+		thread.join();
+		return current.get();
+	}
+}
@@ -0,0 +1,62 @@
+package org.molgenis.downloader.client;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class AdaptivePageSizeTest
+{
+	@Test
+	public void growsWhenFastTest()
+	{
+		AdaptivePageSize pageSize = new AdaptivePageSize(100, 1000);
+		pageSize.update(100, 10000, 100);
+		assertEquals(pageSize.get(), 200);
+		pageSize.update(200, 20000, 800);
+		assertEquals(pageSize.get(), 250);
+	}
+
+	@Test
+	public void shrinksWhenSlowTest()
+	{
+		AdaptivePageSize pageSize = new AdaptivePageSize(1000, 1000);
+		pageSize.update(1000, 100000, 5000);
+		assertEquals(pageSize.get(), 500);
+	}
+
+	@Test
+	public void ignoresLastPageTest()
+	{
+		AdaptivePageSize pageSize = new AdaptivePageSize(100, 1000);
+		pageSize.update(7, 700, 1);
+		assertEquals(pageSize.get(), 100);
+	}
+
+	@Test
+	public void limitsBytesTest()
+	{
+		AdaptivePageSize pageSize = new AdaptivePageSize(1000, 1000);
+		pageSize.update(1000, 4 * AdaptivePageSize.MAX_PAGE_BYTES, 10);
+		assertEquals(pageSize.get(), 250);
+	}
+
+	@Test
+	public void limitsSizeTest()
+	{
+		assertEquals(new AdaptivePageSize(50000, 1000).get(), AdaptivePageSize.MAX_PAGE_SIZE);
+		assertEquals(new AdaptivePageSize(1, 1000).get(), AdaptivePageSize.MIN_PAGE_SIZE);
+	}
+
+	@Test
+	public void shrinkTest()
+	{
+		AdaptivePageSize pageSize = new AdaptivePageSize(40, 1000);
+		assertTrue(pageSize.shrink());
+		assertEquals(pageSize.get(), 20);
+		assertTrue(pageSize.shrink());
+		assertEquals(pageSize.get(), AdaptivePageSize.MIN_PAGE_SIZE);
+		assertFalse(pageSize.shrink());
+	}
+}
@@ -0,0 +1,120 @@
+package org.molgenis.downloader.client;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class HttpClientFactoryTest
+{
+	private HttpServer server;
+	private List<Integer> clientPorts;
+	private List<String> acceptEncodings;
+
+	@BeforeMethod
+	public void setUp() throws Exception
+	{
+		clientPorts = new ArrayList<>();
+		acceptEncodings = new ArrayList<>();
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", exchange ->
+		{
+			clientPorts.add(exchange.getRemoteAddress().getPort());
+			String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+			acceptEncodings.add(acceptEncoding);
+			boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+			if (gzip)
+			{
+				exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+			}
+			exchange.sendResponseHeaders(200, 0);
+			OutputStream body = exchange.getResponseBody();
+			try (OutputStream out = gzip ? new GZIPOutputStream(body) : body)
+			{
+				out.write("{\"items\":[]}".getBytes(UTF_8));
+			}
+		});
+		server.start();
+	}
+
+	@AfterMethod
+	public void tearDown()
+	{
+		server.stop(0);
+	}
+
+	@Test
+	public void reusesConnectionsTest() throws Exception
+	{
+		HttpClientConfig config = new HttpClientConfig();
+		config.setMaxConnections(4);
+		try (CloseableHttpClient client = HttpClientFactory.create(config))
+		{
+			for (int i = 0; i < 3; i++)
+			{
+				assertEquals(get(client), "{\"items\":[]}");
+			}
+		}
+		assertEquals(clientPorts.size(), 3);
+		assertEquals(clientPorts.get(1), clientPorts.get(0));
+		assertEquals(clientPorts.get(2), clientPorts.get(0));
+		assertTrue(acceptEncodings.get(0).contains("gzip"));
+	}
+
+	@Test
+	public void noCompressionTest() throws Exception
+	{
+		HttpClientConfig config = new HttpClientConfig();
+		config.setCompression(false);
+		try (CloseableHttpClient client = HttpClientFactory.create(config))
+		{
+			assertEquals(get(client), "{\"items\":[]}");
+		}
+		assertNull(acceptEncodings.get(0));
+	}
+
+	@Test
+	public void asyncTest() throws Exception
+	{
+		HttpClientConfig config = new HttpClientConfig();
+		config.setMaxConnections(4);
+		try (AsyncHttpTransport transport = new AsyncHttpTransport(HttpClientFactory.createAsync(config),
+				HttpClientFactory.create(config)))
+		{
+			for (int i = 0; i < 3; i++)
+			{
+				HttpGet request = new HttpGet("http://localhost:" + server.getAddress().getPort() + "/api/v2/entity");
+				HttpResponse response = transport.executeAsync(request).get();
+				assertEquals(EntityUtils.toString(response.getEntity(), UTF_8), "{\"items\":[]}");
+			}
+		}
+		assertEquals(clientPorts.size(), 3);
+		assertEquals(clientPorts.get(2), clientPorts.get(0));
+		assertTrue(acceptEncodings.get(0).contains("gzip"));
+	}
+
+	private String get(CloseableHttpClient client) throws Exception
+	{
+		HttpGet request = new HttpGet("http://localhost:" + server.getAddress().getPort() + "/api/v2/entity");
+		try (CloseableHttpResponse response = client.execute(request))
+		{
+			return EntityUtils.toString(response.getEntity(), UTF_8);
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package org.molgenis.downloader.client;
+
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.molgenis.downloader.api.metadata.DataType.INT;
+import static org.molgenis.downloader.api.metadata.DataType.STRING;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class IdRangeSplitterTest
+{
+	@Test
+	public void splitNumericTest()
+	{
+		assertEquals(IdRangeSplitter.split(INT, "0", "100", 4), asList("25", "50", "75"));
+		assertEquals(IdRangeSplitter.split(INT, "-10", "10", 2), asList("0"));
+		assertEquals(IdRangeSplitter.split(INT, "1", "3", 8), asList("2"));
+	}
+
+	@Test
+	public void splitLexicographicTest()
+	{
+		List<String> boundaries = IdRangeSplitter.split(STRING, "AAAACWF6XCWCAATAPVHJR3AAAM",
+				"AAAACWF6XCXAAATAPVHJR3AAAY", 4);
+		assertEquals(boundaries.size(), 3);
+		String previous = "AAAACWF6XCWCAATAPVHJR3AAAM";
+		for (String boundary : boundaries)
+		{
+			assertTrue(boundary.startsWith("AAAACWF6XC"), boundary);
+			assertTrue(boundary.compareTo(previous) > 0, boundary);
+			previous = boundary;
+		}
+		assertTrue(previous.compareTo("AAAACWF6XCXAAATAPVHJR3AAAY") < 0, previous);
+		assertEquals(IdRangeSplitter.split(STRING, "a", "z", 2), asList("m"));
+	}
+
+	@Test
+	public void unsplittableTest()
+	{
+		assertEquals(IdRangeSplitter.split(STRING, "Mixed", "case", 4), emptyList());
+		assertEquals(IdRangeSplitter.split(STRING, "with space", "with-dash", 4), emptyList());
+		assertEquals(IdRangeSplitter.split(STRING, "same", "same", 4), emptyList());
+		assertEquals(IdRangeSplitter.split(INT, "1", "100", 1), emptyList());
+	}
+}
@@ -0,0 +1,52 @@
+package org.molgenis.downloader.client;
+
+import org.testng.annotations.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.testng.Assert.*;
+
+public class MetadataCacheTest
+{
+	@Test
+	public void storeAndLoadTest() throws Exception
+	{
+		Path directory = Files.createTempDirectory("metadata");
+		MetadataCache cache = new MetadataCache(directory, 60000);
+		Map<String, String> row = new HashMap<>();
+		row.put("id", "pkg_entity");
+		row.put("description", "ünïcode " + new String(new char[70000]).replace('\0', 'x'));
+		List<List<Map<String, String>>> rows = asList(singletonList(row), emptyList());
+
+		assertNull(cache.load("http://server 8.7.0", "[1, 0]"));
+		cache.store("http://server 8.7.0", "[1, 0]", rows);
+
+		assertEquals(cache.load("http://server 8.7.0", "[1, 0]"), rows);
+		assertNull(cache.load("http://server 8.7.0", "[2, 0]"));
+		assertNull(cache.load("http://server 9.0.0", "[1, 0]"));
+		Thread.sleep(5);
+		assertNull(new MetadataCache(directory, 0).load("http://server 8.7.0", "[1, 0]"));
+	}
+
+	@Test
+	public void corruptFileTest() throws Exception
+	{
+		Path directory = Files.createTempDirectory("metadata");
+		MetadataCache cache = new MetadataCache(directory, 60000);
+		cache.store("http://server 8.7.0", "[1]", singletonList(emptyList()));
+		try (Stream<Path> files = Files.list(directory))
+		{
+			Files.write(files.findFirst().get(), new byte[] { 1, 2, 3 });
+		}
+
+		assertNull(cache.load("http://server 8.7.0", "[1]"));
+	}
+}
@@ -0,0 +1,46 @@
+package org.molgenis.downloader.client;
+
+import com.google.common.io.Resources;
+import org.json.JSONObject;
+import org.molgenis.downloader.api.metadata.Attribute;
+import org.molgenis.downloader.api.metadata.Entity;
+import org.testng.annotations.Test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.testng.Assert.*;
+
+public class MetadataGraphBuilderTest
+{
+	@Test
+	public void refEntitiesAreSharedTest() throws Exception
+	{
+		JSONObject meta = new JSONObject(
+				Resources.toString(Resources.getResource("integration/attributes.json"), UTF_8)).getJSONObject("meta");
+		MetadataGraphBuilder builder = new MetadataGraphBuilder();
+
+		Entity first = builder.entityFromJSON(meta);
+		Entity second = builder.entityFromJSON(meta);
+
+		assertNotSame(first, second);
+		assertEquals(first, second);
+		Entity entityType = getAttribute(first, "entity").getRefEntity();
+		assertEquals(entityType.getFullName(), "sys_md_EntityType");
+		assertSame(getAttribute(first, "refEntityType").getRefEntity(), entityType);
+		assertSame(getAttribute(second, "entity").getRefEntity(), entityType);
+		assertEquals(entityType.getIdAttribute().getName(), "fullName");
+
+		Entity parent = getAttribute(first, "parent").getRefEntity();
+		assertEquals(parent.getFullName(), "sys_md_Attribute");
+		assertNotSame(parent, first);
+		assertSame(getAttribute(first, "children").getRefEntity(), parent);
+	}
+
+	private static Attribute getAttribute(final Entity entity, final String name)
+	{
+		return entity.getAttributes()
+					 .stream()
+					 .filter(attribute -> attribute.getName().equals(name))
+					 .findFirst()
+					 .orElseThrow(() -> new AssertionError("No attribute " + name));
+	}
+}
@@ -4,27 +4,69 @@ import com.google.common.collect.Sets;
 import org.apache.commons.io.IOUtils;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.NameValuePair;
+import org.apache.http.StatusLine;
 import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicStatusLine;
+import org.json.JSONArray;
 import org.json.JSONObject;
+import org.molgenis.downloader.api.Checkpoint;
+import org.molgenis.downloader.api.EntityConsumer;
+import org.molgenis.downloader.api.EntitySelection;
+import org.molgenis.downloader.api.MetadataRepository;
+import org.molgenis.downloader.api.ThreadMode;
 import org.molgenis.downloader.api.metadata.Attribute;
 import org.molgenis.downloader.api.metadata.DataType;
 import org.molgenis.downloader.api.metadata.Entity;
 import org.molgenis.downloader.api.metadata.MolgenisVersion;
 import org.testng.annotations.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
 
 public class MolgenisRestApiClientTest
 {
+	private static final StatusLine OK = new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK");
+
 	@Test
 	public void versionTest() throws IOException, URISyntaxException
 	{
@@ -34,6 +76,7 @@ public class MolgenisRestApiClientTest
 
 		when(httpEntity.getContent()).thenReturn(getClass().getResourceAsStream("/versionResponse.txt"));
 		when(httpResponse.getEntity()).thenReturn(httpEntity);
+		when(httpResponse.getStatusLine()).thenReturn(OK);
 		when(httpClient.execute(any())).thenReturn(httpResponse);
 
 		MolgenisRestApiClient client = new MolgenisRestApiClient(httpClient, new URI(""));
@@ -51,12 +94,13 @@ public class MolgenisRestApiClientTest
 
 		when(httpEntity.getContent()).thenReturn(getClass().getResourceAsStream("/entities.txt"));
 		when(httpResponse.getEntity()).thenReturn(httpEntity);
+		when(httpResponse.getStatusLine()).thenReturn(OK);
 		when(httpClient.execute(any())).thenReturn(httpResponse);
 
 		MolgenisRestApiClient client = new MolgenisRestApiClient(httpClient, new URI(""));
 		Entity actual = client.getEntity("test");
 
-		Attribute idAttr = new Attribute("id").setName("id");
+		Attribute idAttr = new Attribute("id").setName("id").setAuto(true);
 		idAttr.setEntityFullname("biobank");
 		Attribute nameAttr = new Attribute("name").setName("name");
 		nameAttr.setEntityFullname("biobank");
@@ -178,4 +222,886 @@ public class MolgenisRestApiClientTest
 				actual.toString());
 
 	}
+
+	@Test
+	public void streamEntityDataPrefetchNextHrefTest() throws Exception
+	{
+		MolgenisRestApiClient client = new MolgenisRestApiClient(createAttributesHttpClient(), new URI(""));
+		client.setPrefetchPages(2);
+
+		List<String> ids = new ArrayList<>();
+		client.streamEntityData("sys_md_Attribute", row -> ids.add(row.get("id")));
+
+		assertEquals(487, ids.size());
+		assertEquals("AAAACWF6XCXAAATAPVHJR3AAAY", ids.get(0));
+		assertEquals("AAAACWF6XCWCAATAPVHJR3AAAM", ids.get(100));
+	}
+
+	@Test
+	public void streamEntityDataPrefetchOffsetTest() throws Exception
+	{
+		MolgenisRestApiClient client = new MolgenisRestApiClient(createAttributesHttpClient(), new URI(""));
+		client.setPagingMode(PagingMode.OFFSET);
+		client.setPrefetchPages(3);
+
+		List<String> ids = new ArrayList<>();
+		client.streamEntityData("sys_md_Attribute", row -> ids.add(row.get("id")));
+
+		assertEquals(487, ids.size());
+		assertEquals("AAAACWF6XCXAAATAPVHJR3AAAY", ids.get(0));
+		assertEquals("AAAACWF6XCWCAATAPVHJR3AAAM", ids.get(100));
+	}
+
+	@Test
+	public void streamEntityDataKeysetTest() throws Exception
+	{
+		List<String> all = new ArrayList<>();
+		new MolgenisRestApiClient(createAttributesHttpClient(), new URI("")).streamEntityData("sys_md_Attribute",
+				row -> all.add(row.get("id")));
+
+		List<String> queries = new ArrayList<>();
+		MolgenisRestApiClient client = new MolgenisRestApiClient(createKeysetHttpClient(all, queries), new URI(""));
+		client.setPagingMode(PagingMode.KEYSET);
+		client.setPrefetchPages(1);
+
+		List<String> ids = new ArrayList<>();
+		client.streamEntityData("sys_md_Attribute", row -> ids.add(row.get("id")));
+
+		assertEquals(all, ids);
+		assertEquals("id=gt=\"" + all.get(99) + "\"", queries.get(0));
+		assertEquals(4, queries.size());
+	}
+
+	@Test
+	public void streamEntityDataOrderedPartitionsTest() throws Exception
+	{
+		List<String> all = new ArrayList<>();
+		new MolgenisRestApiClient(createAttributesHttpClient(), new URI("")).streamEntityData("sys_md_Attribute",
+				row -> all.add(row.get("id")));
+		Collections.sort(all);
+
+		MolgenisRestApiClient client = new MolgenisRestApiClient(createRsqlHttpClient(), new URI(""));
+		client.setPartitions(4);
+
+		List<String> ids = new ArrayList<>();
+		List<Checkpoint> checkpoints = new ArrayList<>();
+		client.streamEntityData("sys_md_Attribute", new EntityConsumer()
+		{
+			@Override
+			public void accept(Map<String, String> row)
+			{
+				ids.add(row.get("id"));
+			}
+
+			@Override
+			public void pageConsumed(Checkpoint checkpoint)
+			{
+				checkpoints.add(checkpoint);
+			}
+		}, 50);
+
+		assertEquals(all, ids);
+		Checkpoint last = checkpoints.get(checkpoints.size() - 1);
+		assertTrue(last.isComplete());
+		assertEquals(487, last.getRows());
+		assertEquals(all.get(486), last.getLastId());
+	}
+
+	@Test
+	public void streamEntityDataOrderedPartitionsFailureTest() throws Exception
+	{
+		HttpClient rsqlClient = createRsqlHttpClient();
+		CountDownLatch release = new CountDownLatch(1);
+		HttpClient httpClient = mock(HttpClient.class);
+		when(httpClient.execute(any())).thenAnswer(invocation ->
+		{
+			HttpUriRequest request = invocation.getArgument(0);
+			String query = request.getURI().getQuery();
+			if (query.contains("=ge="))
+			{
+				// the later ranges are stuck reading a page, which cancelling them does not interrupt
+				boolean interrupted = false;
+				while (release.getCount() > 0)
+				{
+					try
+					{
+						release.await();
+					}
+					catch (InterruptedException ex)
+					{
+						interrupted = true;
+					}
+				}
+				if (interrupted)
+				{
+					Thread.currentThread().interrupt();
+				}
+			}
+			else if (query.contains("=lt="))
+			{
+				throw new SocketException("Connection reset");
+			}
+			return rsqlClient.execute(request);
+		});
+
+		MolgenisRestApiClient client = new MolgenisRestApiClient(httpClient, new URI(""));
+		client.setPartitions(3);
+
+		Set<Path> before = listSpools();
+		try
+		{
+			client.streamEntityData("sys_md_Attribute", row ->
+			{
+			}, 50);
+			assertEquals(before, listSpools());
+		}
+		finally
+		{
+			release.countDown();
+		}
+	}
+
+	@Test
+	public void streamEntityDataUnorderedPartitionsTest() throws Exception
+	{
+		List<String> all = new ArrayList<>();
+		new MolgenisRestApiClient(createAttributesHttpClient(), new URI("")).streamEntityData("sys_md_Attribute",
+				row -> all.add(row.get("id")));
+		Collections.sort(all);
+
+		MolgenisRestApiClient client = new MolgenisRestApiClient(createRsqlHttpClient(), new URI(""));
+		client.setPartitions(3);
+		client.setOrderedPartitions(false);
+
+		List<String> ids = Collections.synchronizedList(new ArrayList<>());
+		client.streamEntityData("sys_md_Attribute", row -> ids.add(row.get("id")), 50);
+
+		Collections.sort(ids);
+		assertEquals(all, ids);
+	}
+
+	@Test
+	public void streamEntityDataConcurrencyTest() throws Exception
+	{
+		HttpClient rsqlClient = createRsqlHttpClient();
+		AtomicInteger requests = new AtomicInteger();
+		AtomicInteger maxRequests = new AtomicInteger();
+		HttpClient httpClient = mock(HttpClient.class);
+		when(httpClient.execute(any())).thenAnswer(invocation ->
+		{
+			maxRequests.accumulateAndGet(requests.incrementAndGet(), Math::max);
+			try
+			{
+				Thread.sleep(5);
+				return rsqlClient.execute(invocation.<HttpUriRequest>getArgument(0));
+			}
+			finally
+			{
+				requests.decrementAndGet();
+			}
+		});
+
+		MolgenisRestApiClient client = new MolgenisRestApiClient(httpClient, new URI(""));
+		client.setThreadMode(ThreadMode.VIRTUAL);
+		client.setPartitions(4);
+		client.setConcurrency(2);
+
+		List<String> ids = new ArrayList<>();
+		client.streamEntityData("sys_md_Attribute", row -> ids.add(row.get("id")), 50);
+
+		assertEquals(487, ids.size());
+		assertTrue(maxRequests.get() <= 2);
+	}
+
+	@Test
+	public void streamEntityDataAdaptivePageSizeTest() throws Exception
+	{
+		List<String> all = new ArrayList<>();
+		new MolgenisRestApiClient(createAttributesHttpClient(), new URI("")).streamEntityData("sys_md_Attribute",
+				row -> all.add(row.get("id")));
+		Collections.sort(all);
+
+		HttpClient rsqlClient = createRsqlHttpClient();
+		List<Integer> nums = new ArrayList<>();
+		HttpClient httpClient = mock(HttpClient.class);
+		when(httpClient.execute(any())).thenAnswer(invocation ->
+		{
+			HttpUriRequest request = invocation.getArgument(0);
+			for (NameValuePair parameter : URLEncodedUtils.parse(request.getURI(), "UTF-8"))
+			{
+				if (parameter.getName().equals("num") && request.getURI().getRawQuery().contains("q="))
+				{
+					int num = Integer.parseInt(parameter.getValue());
+					nums.add(num);
+					if (num > 100)
+					{
+						throw new SocketTimeoutException("Read timed out");
+					}
+				}
+			}
+			return rsqlClient.execute(request);
+		});
+
+		MolgenisRestApiClient client = new MolgenisRestApiClient(httpClient, new URI(""));
+		client.setPagingMode(PagingMode.KEYSET);
+		client.setTargetPageMillis(60000);
+		client.setRetryPolicy(new RetryPolicy(2, 1, 10));
+
+		List<String> ids = new ArrayList<>();
+		client.streamEntityData("sys_md_Attribute", row -> ids.add(row.get("id")), 20);
+
+		assertEquals(all, ids);
+		// the page that timed out is made smaller right away, rather than retried at the same size first
+		assertEquals(asList(40, 80, 160, 80), nums.subList(0, 4));
+		assertTrue(client.getRetryCounts().isEmpty());
+	}
+
+	@Test
+	public void streamEntityDataAdaptivePageSizeConcurrencyTest() throws Exception
+	{
+		HttpClient rsqlClient = createRsqlHttpClient();
+		AtomicInteger slowRequests = new AtomicInteger();
+		List<Integer> nums = Collections.synchronizedList(new ArrayList<>());
+		HttpClient httpClient = mock(HttpClient.class);
+		when(httpClient.execute(any())).thenAnswer(invocation ->
+		{
+			HttpUriRequest request = invocation.getArgument(0);
+			String query = request.getURI().getRawQuery();
+			if (query.contains("%3Dge%3D") && slowRequests.getAndIncrement() == 0)
+			{
+				// the second range takes up the only permit for longer than the target page time
+				Thread.sleep(500);
+			}
+			else if (query.contains("%3Dlt%3D") && !query.contains("%3Dge%3D"))
+			{
+				URLEncodedUtils.parse(request.getURI(), "UTF-8")
+							   .stream()
+							   .filter(parameter -> parameter.getName().equals("num"))
+							   .forEach(parameter -> nums.add(Integer.parseInt(parameter.getValue())));
+			}
+			return rsqlClient.execute(request);
+		});
+
+		MolgenisRestApiClient client = new MolgenisRestApiClient(httpClient, new URI(""));
+		client.setPartitions(2);
+		client.setConcurrency(1);
+		client.setTargetPageMillis(200);
+
+		List<String> ids = new ArrayList<>();
+		client.streamEntityData("sys_md_Attribute", row -> ids.add(row.get("id")), 20);
+
+		assertEquals(487, ids.size());
+		// the pages of the first range are quick to read, waiting for the permit does not make them smaller
+		for (int index = 1; index < nums.size(); index++)
+		{
+			assertTrue(nums.toString(), nums.get(index) >= nums.get(index - 1));
+		}
+	}
+
+	@Test
+	public void streamEntityDataRetryStatusTest() throws Exception
+	{
+		HttpClient attributesClient = createAttributesHttpClient();
+		AtomicInteger failures = new AtomicInteger();
+		HttpClient httpClient = mock(HttpClient.class);
+		when(httpClient.execute(any())).thenAnswer(invocation ->
+		{
+			HttpUriRequest request = invocation.getArgument(0);
+			if ("start=200".equals(request.getURI().getQuery()) && failures.getAndIncrement() < 2)
+			{
+				HttpResponse httpResponse = mock(HttpResponse.class);
+				when(httpResponse.getStatusLine()).thenReturn(
+						new BasicStatusLine(HttpVersion.HTTP_1_1, 503, "Service Unavailable"));
+				when(httpResponse.getFirstHeader("Retry-After")).thenReturn(new BasicHeader("Retry-After", "0"));
+				return httpResponse;
+			}
+			return attributesClient.execute(request);
+		});
+
+		MolgenisRestApiClient client = new MolgenisRestApiClient(httpClient, new URI(""));
+		client.setRetryPolicy(new RetryPolicy(2, 1, 10));
+
+		List<String> ids = new ArrayList<>();
+		client.streamEntityData("sys_md_Attribute", row -> ids.add(row.get("id")));
+
+		assertEquals(487, ids.size());
+		assertEquals(Collections.singletonMap("sys_md_Attribute", 2), client.getRetryCounts());
+	}
+
+	@Test
+	public void streamEntityDataUnauthorizedTest() throws Exception
+	{
+		HttpClient attributesClient = createAttributesHttpClient();
+		AtomicInteger failures = new AtomicInteger();
+		HttpClient httpClient = mock(HttpClient.class);
+		when(httpClient.execute(any())).thenAnswer(invocation ->
+		{
+			HttpUriRequest request = invocation.getArgument(0);
+			if ("start=100".equals(request.getURI().getQuery()))
+			{
+				failures.incrementAndGet();
+				HttpResponse httpResponse = mock(HttpResponse.class);
+				when(httpResponse.getStatusLine()).thenReturn(
+						new BasicStatusLine(HttpVersion.HTTP_1_1, 401, "Unauthorized"));
+				return httpResponse;
+			}
+			return attributesClient.execute(request);
+		});
+
+		MolgenisRestApiClient client = new MolgenisRestApiClient(httpClient, new URI(""));
+		client.setRetryPolicy(new RetryPolicy(2, 1, 10));
+
+		List<String> ids = new ArrayList<>();
+		List<Checkpoint> checkpoints = new ArrayList<>();
+		client.streamEntityData("sys_md_Attribute", new EntityConsumer()
+		{
+			@Override
+			public void accept(Map<String, String> row)
+			{
+				ids.add(row.get("id"));
+			}
+
+			@Override
+			public void pageConsumed(Checkpoint checkpoint)
+			{
+				checkpoints.add(checkpoint);
+			}
+		});
+
+		assertEquals("401 is not retried", 1, failures.get());
+		assertEquals(100, ids.size());
+		for (Checkpoint checkpoint : checkpoints)
+		{
+			assertFalse(checkpoint.isComplete());
+		}
+	}
+
+	@Test
+	public void streamEntityDataRetryResetTest() throws Exception
+	{
+		List<String> all = new ArrayList<>();
+		new MolgenisRestApiClient(createAttributesHttpClient(), new URI("")).streamEntityData("sys_md_Attribute",
+				row -> all.add(row.get("id")));
+
+		HttpClient attributesClient = createAttributesHttpClient();
+		AtomicInteger failures = new AtomicInteger();
+		HttpClient httpClient = mock(HttpClient.class);
+		when(httpClient.execute(any())).thenAnswer(invocation ->
+		{
+			HttpUriRequest request = invocation.getArgument(0);
+			HttpResponse httpResponse = attributesClient.execute(request);
+			if ("start=100".equals(request.getURI().getQuery()) && failures.getAndIncrement() == 0)
+			{
+				// the connection is reset half way through the page
+				byte[] content = IOUtils.toByteArray(httpResponse.getEntity().getContent());
+				InputStream half = new SequenceInputStream(
+						new ByteArrayInputStream(content, 0, content.length / 2), new InputStream()
+				{
+					@Override
+					public int read() throws IOException
+					{
+						throw new SocketException("Connection reset");
+					}
+				});
+				when(httpResponse.getEntity().getContent()).thenReturn(half);
+			}
+			return httpResponse;
+		});
+
+		MolgenisRestApiClient client = new MolgenisRestApiClient(httpClient, new URI(""));
+		client.setRetryPolicy(new RetryPolicy(1, 1, 10));
+
+		List<String> ids = new ArrayList<>();
+		client.streamEntityData("sys_md_Attribute", row -> ids.add(row.get("id")));
+
+		assertEquals(all, ids);
+		assertEquals(Collections.singletonMap("sys_md_Attribute", 1), client.getRetryCounts());
+	}
+
+	@Test
+	public void streamEntityDataAbortTest() throws Exception
+	{
+		HttpClient attributesClient = createAttributesHttpClient();
+		List<String> events = new ArrayList<>();
+		HttpClient httpClient = mock(HttpClient.class);
+		when(httpClient.execute(any())).thenAnswer(invocation ->
+		{
+			HttpUriRequest request = invocation.getArgument(0);
+			HttpResponse httpResponse = attributesClient.execute(request);
+			if (!"start=100".equals(request.getURI().getQuery()))
+			{
+				return httpResponse;
+			}
+			// the connection is reset half way through the page, closing the stream would read the rest of it
+			byte[] content = IOUtils.toByteArray(httpResponse.getEntity().getContent());
+			InputStream half = new SequenceInputStream(new ByteArrayInputStream(content, 0, content.length / 2),
+					new InputStream()
+					{
+						@Override
+						public int read() throws IOException
+						{
+							throw new SocketException("Connection reset");
+						}
+
+						@Override
+						public void close()
+						{
+							events.add("close");
+						}
+					});
+			HttpEntity httpEntity = mock(HttpEntity.class);
+			when(httpEntity.getContent()).thenReturn(half);
+			CloseableHttpResponse closeable = mock(CloseableHttpResponse.class);
+			when(closeable.getEntity()).thenReturn(httpEntity);
+			when(closeable.getStatusLine()).thenReturn(OK);
+			doAnswer(close -> events.add("abort")).when(closeable).close();
+			return closeable;
+		});
+
+		MolgenisRestApiClient client = new MolgenisRestApiClient(httpClient, new URI(""));
+		client.streamEntityData("sys_md_Attribute", row ->
+		{
+		});
+
+		assertFalse(events.isEmpty());
+		assertEquals("abort", events.get(0));
+	}
+
+	@Test
+	public void streamEntityDataNoRetryTest() throws Exception
+	{
+		HttpClient attributesClient = createAttributesHttpClient();
+		HttpClient httpClient = mock(HttpClient.class);
+		when(httpClient.execute(any())).thenAnswer(invocation ->
+		{
+			HttpUriRequest request = invocation.getArgument(0);
+			if ("start=100".equals(request.getURI().getQuery()))
+			{
+				throw new SocketException("Connection reset");
+			}
+			return attributesClient.execute(request);
+		});
+
+		MolgenisRestApiClient client = new MolgenisRestApiClient(httpClient, new URI(""));
+
+		List<String> ids = new ArrayList<>();
+		client.streamEntityData("sys_md_Attribute", row -> ids.add(row.get("id")));
+
+		assertEquals(100, ids.size());
+		assertTrue(client.getRetryCounts().isEmpty());
+	}
+
+	@Test
+	public void parseRetryAfterTest()
+	{
+		assertEquals(Long.valueOf(120000), MolgenisRestApiClient.parseRetryAfter("120"));
+		assertEquals(Long.valueOf(0), MolgenisRestApiClient.parseRetryAfter("Wed, 21 Oct 2015 07:28:00 GMT"));
+		assertEquals(null, MolgenisRestApiClient.parseRetryAfter("soon"));
+	}
+
+	@Test
+	public void streamEntityDataProjectionTest() throws Exception
+	{
+		HttpClient attributesClient = createAttributesHttpClient();
+		List<URI> requests = new ArrayList<>();
+		HttpClient httpClient = mock(HttpClient.class);
+		when(httpClient.execute(any())).thenAnswer(invocation ->
+		{
+			HttpUriRequest request = invocation.getArgument(0);
+			requests.add(request.getURI());
+			return attributesClient.execute(request);
+		});
+
+		MolgenisRestApiClient client = new MolgenisRestApiClient(httpClient, new URI(""));
+		client.setProjection(true);
+
+		List<Map<String, String>> rows = new ArrayList<>();
+		client.streamEntityData("sys_md_Attribute", rows::add);
+
+		List<Map<String, String>> expected = new ArrayList<>();
+		new MolgenisRestApiClient(createAttributesHttpClient(), new URI("")).streamEntityData("sys_md_Attribute",
+				expected::add);
+		assertEquals(expected, rows);
+
+		assertEquals(6, requests.size());
+		assertFalse(requests.get(0).getQuery().contains("attrs="));
+		for (URI request : requests.subList(1, requests.size()))
+		{
+			List<String> attrs = URLEncodedUtils.parse(request, "UTF-8")
+												.stream()
+												.filter(parameter -> parameter.getName().equals("attrs"))
+												.map(NameValuePair::getValue)
+												.collect(Collectors.toList());
+			assertEquals(1, attrs.size());
+			List<String> projection = asList(attrs.get(0).split(","));
+			assertTrue(projection.containsAll(asList("id", "name", "entity(fullName)", "children(id)", "tags(id)")));
+			assertEquals(45, projection.size());
+		}
+	}
+
+	@Test
+	public void streamEntityDataCachedEntityTest() throws Exception
+	{
+		HttpClient attributesClient = createAttributesHttpClient();
+		List<URI> requests = new ArrayList<>();
+		HttpClient httpClient = mock(HttpClient.class);
+		when(httpClient.execute(any())).thenAnswer(invocation ->
+		{
+			HttpUriRequest request = invocation.getArgument(0);
+			requests.add(request.getURI());
+			return attributesClient.execute(request);
+		});
+
+		MolgenisRestApiClient client = new MolgenisRestApiClient(httpClient, new URI(""));
+		Entity entity = client.getEntity("sys_md_Attribute");
+		List<Map<String, String>> rows = new ArrayList<>();
+		client.streamEntityData("sys_md_Attribute", rows::add);
+
+		assertSame(entity, client.getEntity("sys_md_Attribute"));
+		assertEquals(487, rows.size());
+		assertEquals(1, requests.stream().filter(request -> "num=1".equals(request.getQuery())).count());
+		assertEquals(6, requests.size());
+	}
+
+	@Test
+	public void quoteRsqlTest()
+	{
+		assertEquals("\"a \\\"b\\\\\"", MolgenisRestApiClient.quoteRsql("a \"b\\"));
+	}
+
+	@Test
+	public void streamEntityDataSelectionTest() throws Exception
+	{
+		List<URI> requests = new ArrayList<>();
+		MolgenisRestApiClient client = new MolgenisRestApiClient(createRsqlHttpClient(requests), new URI(""));
+		client.setPartitions(2);
+
+		List<Map<String, String>> rows = new ArrayList<>();
+		client.streamEntityData("sys_md_Attribute", rows::add, 50, null,
+				new EntitySelection(asList("name", "type"), "type==string"));
+
+		assertEquals(217, rows.size());
+		assertTrue(rows.stream().allMatch(row -> row.get("type").equals("string")));
+		for (URI request : requests)
+		{
+			Map<String, String> parameters = URLEncodedUtils.parse(request, "UTF-8")
+															.stream()
+															.collect(Collectors.toMap(NameValuePair::getName,
+																	NameValuePair::getValue));
+			if (parameters.containsKey("sort"))
+			{
+				String query = parameters.get("q");
+				assertTrue(query, query.equals("type==string") || query.startsWith("(type==string);"));
+				assertEquals(new HashSet<>(asList("id", "name", "type")),
+						new HashSet<>(asList(parameters.get("attrs").split(","))));
+			}
+		}
+	}
+
+	@Test
+	public void getMetadataConcurrentTest() throws Exception
+	{
+		Map<String, String> resources = new HashMap<>();
+		resources.put("/api/v2/sys_Language", "language");
+		resources.put("/api/v2/sys_md_Tag", "tags");
+		resources.put("/api/v2/sys_md_Package", "package");
+		resources.put("/api/v2/sys_md_Attribute", "attributes");
+		resources.put("/api/v2/sys_md_EntityType", "type");
+		CountDownLatch firstPages = new CountDownLatch(resources.size());
+		AtomicInteger concurrent = new AtomicInteger();
+
+		HttpClient httpClient = mock(HttpClient.class);
+		when(httpClient.execute(any())).thenAnswer(invocation ->
+		{
+			HttpUriRequest request = invocation.getArgument(0);
+			String query = request.getURI().getQuery();
+			String start = query.contains("start=") ? query.replaceAll(".*start=(\\d+).*", "$1") : "";
+			if (!query.contains("num=1") && start.isEmpty())
+			{
+				firstPages.countDown();
+				if (firstPages.await(10, TimeUnit.SECONDS))
+				{
+					concurrent.incrementAndGet();
+				}
+			}
+			HttpResponse httpResponse = mock(HttpResponse.class);
+			HttpEntity httpEntity = mock(HttpEntity.class);
+			when(httpEntity.getContent()).thenReturn(getClass().getResourceAsStream(
+					"/integration/" + resources.get(request.getURI().getPath()) + start + ".json"));
+			when(httpResponse.getEntity()).thenReturn(httpEntity);
+			when(httpResponse.getStatusLine()).thenReturn(OK);
+			return httpResponse;
+		});
+
+		MolgenisRestApiClient client = new MolgenisRestApiClient(httpClient, new URI(""));
+		MetadataRepository repository = client.getMetadata(MolgenisVersion.VERSION_2);
+
+		assertEquals(resources.size(), concurrent.get());
+		assertFalse(repository.getEntities().isEmpty());
+		assertFalse(repository.getAttributes().isEmpty());
+		assertFalse(repository.getLanguages().isEmpty());
+	}
+
+	@Test
+	public void getMetadataCacheTest() throws Exception
+	{
+		Map<String, String> resources = new HashMap<>();
+		resources.put("/api/v2/sys_Language", "language");
+		resources.put("/api/v2/sys_md_Tag", "tags");
+		resources.put("/api/v2/sys_md_Package", "package");
+		resources.put("/api/v2/sys_md_Attribute", "attributes");
+		resources.put("/api/v2/sys_md_EntityType", "type");
+		AtomicInteger pageRequests = new AtomicInteger();
+
+		HttpClient httpClient = mock(HttpClient.class);
+		when(httpClient.execute(any())).thenAnswer(invocation ->
+		{
+			HttpUriRequest request = invocation.getArgument(0);
+			String query = request.getURI().getQuery();
+			String start = query.contains("start=") ? query.replaceAll(".*start=(\\d+).*", "$1") : "";
+			if (!query.equals("num=1"))
+			{
+				pageRequests.incrementAndGet();
+			}
+			HttpResponse httpResponse = mock(HttpResponse.class);
+			HttpEntity httpEntity = mock(HttpEntity.class);
+			when(httpEntity.getContent()).thenReturn(getClass().getResourceAsStream(
+					"/integration/" + resources.get(request.getURI().getPath()) + start + ".json"));
+			when(httpResponse.getEntity()).thenReturn(httpEntity);
+			when(httpResponse.getStatusLine()).thenReturn(OK);
+			return httpResponse;
+		});
+		MetadataCache cache = new MetadataCache(Files.createTempDirectory("metadata"), 60000);
+
+		MolgenisRestApiClient downloading = new MolgenisRestApiClient(httpClient, new URI(""));
+		downloading.setMetadataCache(cache);
+		MetadataRepository downloaded = downloading.getMetadata(MolgenisVersion.VERSION_2);
+		assertTrue("The metadata should be downloaded", pageRequests.get() > 0);
+
+		pageRequests.set(0);
+		MolgenisRestApiClient caching = new MolgenisRestApiClient(httpClient, new URI(""));
+		caching.setMetadataCache(cache);
+		MetadataRepository cached = caching.getMetadata(MolgenisVersion.VERSION_2);
+
+		assertEquals(0, pageRequests.get());
+		assertEquals(downloaded.getEntities().size(), cached.getEntities().size());
+		assertEquals(downloaded.getAttributes().size(), cached.getAttributes().size());
+		assertEquals(downloaded.getPackages().size(), cached.getPackages().size());
+		assertEquals(downloaded.getLanguages().size(), cached.getLanguages().size());
+	}
+
+	@Test
+	public void streamEntityDataResumeTest() throws Exception
+	{
+		List<String> all = new ArrayList<>();
+		new MolgenisRestApiClient(createAttributesHttpClient(), new URI("")).streamEntityData("sys_md_Attribute",
+				row -> all.add(row.get("id")));
+		Collections.sort(all);
+
+		for (PagingMode pagingMode : PagingMode.values())
+		{
+			MolgenisRestApiClient client = new MolgenisRestApiClient(createRsqlHttpClient(), new URI(""));
+			client.setPagingMode(pagingMode);
+
+			List<String> ids = new ArrayList<>();
+			List<Checkpoint> checkpoints = new ArrayList<>();
+			client.streamEntityData("sys_md_Attribute", new EntityConsumer()
+			{
+				@Override
+				public void accept(Map<String, String> row)
+				{
+					ids.add(row.get("id"));
+				}
+
+				@Override
+				public void pageConsumed(Checkpoint checkpoint)
+				{
+					checkpoints.add(checkpoint);
+				}
+			}, null, new Checkpoint(200, all.get(199), false));
+
+			assertEquals(pagingMode.toString(), all.subList(200, 487), ids);
+			assertEquals(3, checkpoints.size());
+			assertEquals(300, checkpoints.get(0).getRows());
+			assertEquals(all.get(299), checkpoints.get(0).getLastId());
+			assertFalse(checkpoints.get(0).isComplete());
+			assertEquals(487, checkpoints.get(2).getRows());
+			assertEquals(all.get(486), checkpoints.get(2).getLastId());
+			assertTrue(checkpoints.get(2).isComplete());
+		}
+	}
+
+	/**
+	 * Serves the pages of sys_md_Attribute based on the 'start' parameter of the request.
+	 */
+	private HttpClient createAttributesHttpClient() throws IOException
+	{
+		HttpClient httpClient = mock(HttpClient.class);
+		when(httpClient.execute(any())).thenAnswer(invocation ->
+		{
+			HttpUriRequest request = invocation.getArgument(0);
+			String query = request.getURI().getQuery();
+			String start = "";
+			if (query != null && query.contains("start="))
+			{
+				start = query.replaceAll(".*start=(\\d+).*", "$1");
+				start = "0".equals(start) ? "" : start;
+			}
+			HttpResponse httpResponse = mock(HttpResponse.class);
+			HttpEntity httpEntity = mock(HttpEntity.class);
+			when(httpEntity.getContent()).thenReturn(
+					getClass().getResourceAsStream("/integration/attributes" + start + ".json"));
+			when(httpResponse.getEntity()).thenReturn(httpEntity);
+			when(httpResponse.getStatusLine()).thenReturn(OK);
+			return httpResponse;
+		});
+		return httpClient;
+	}
+
+	/**
+	 * Serves the pages of sys_md_Attribute based on the last id in the RSQL query of the request.
+	 */
+	private HttpClient createKeysetHttpClient(List<String> ids, List<String> queries) throws IOException
+	{
+		HttpClient httpClient = mock(HttpClient.class);
+		when(httpClient.execute(any())).thenAnswer(invocation ->
+		{
+			HttpUriRequest request = invocation.getArgument(0);
+			String start = "";
+			for (NameValuePair parameter : URLEncodedUtils.parse(request.getURI(), "UTF-8"))
+			{
+				if (parameter.getName().equals("q"))
+				{
+					queries.add(parameter.getValue());
+					String lastId = parameter.getValue().replaceAll("id=gt=\"(.*)\"", "$1");
+					start = String.valueOf(ids.indexOf(lastId) + 1);
+				}
+			}
+			HttpResponse httpResponse = mock(HttpResponse.class);
+			HttpEntity httpEntity = mock(HttpEntity.class);
+			when(httpEntity.getContent()).thenReturn(
+					getClass().getResourceAsStream("/integration/attributes" + start + ".json"));
+			when(httpResponse.getEntity()).thenReturn(httpEntity);
+			when(httpResponse.getStatusLine()).thenReturn(OK);
+			return httpResponse;
+		});
+		return httpClient;
+	}
+
+	private HttpClient createRsqlHttpClient() throws IOException
+	{
+		return createRsqlHttpClient(new ArrayList<>());
+	}
+
+	/**
+	 * Serves the rows of sys_md_Attribute like MOLGENIS does, applying the 'q', 'sort', 'start' and 'num' parameters of
+	 * the request to the rows of all pages. The query may contain groups in parentheses, and equality constraints.
+	 *
+	 * @param requests the list to add the URIs of the requests to
+	 */
+	private HttpClient createRsqlHttpClient(List<URI> requests) throws IOException
+	{
+		JSONObject template = new JSONObject(
+				IOUtils.toString(getClass().getResourceAsStream("/integration/attributes.json"), "UTF-8"));
+		List<JSONObject> items = new ArrayList<>();
+		for (String start : asList("", "100", "200", "300", "400"))
+		{
+			JSONArray page = new JSONObject(IOUtils.toString(
+					getClass().getResourceAsStream("/integration/attributes" + start + ".json"), "UTF-8")).getJSONArray(
+					"items");
+			for (int index = 0; index < page.length(); index++)
+			{
+				items.add(page.getJSONObject(index));
+			}
+		}
+
+		HttpClient httpClient = mock(HttpClient.class);
+		when(httpClient.execute(any())).thenAnswer(invocation ->
+		{
+			HttpUriRequest request = invocation.getArgument(0);
+			requests.add(request.getURI());
+			int num = 100;
+			int start = 0;
+			boolean descending = false;
+			List<Predicate<JSONObject>> filters = new ArrayList<>();
+			for (NameValuePair parameter : URLEncodedUtils.parse(request.getURI(), "UTF-8"))
+			{
+				if (parameter.getName().equals("num"))
+				{
+					num = Integer.parseInt(parameter.getValue());
+				}
+				else if (parameter.getName().equals("start"))
+				{
+					start = Integer.parseInt(parameter.getValue());
+				}
+				else if (parameter.getName().equals("sort"))
+				{
+					descending = parameter.getValue().endsWith(":desc");
+				}
+				else if (parameter.getName().equals("q"))
+				{
+					for (String group : parameter.getValue().split(";"))
+					{
+						String constraint = group.replaceAll("[()]", "");
+						if (constraint.contains("=="))
+						{
+							String[] equality = constraint.split("==");
+							filters.add(item -> item.optString(equality[0]).equals(equality[1]));
+							continue;
+						}
+						String operator = constraint.substring(3, 5);
+						String value = constraint.substring(7, constraint.length() - 1);
+						filters.add(item ->
+						{
+							String id = item.getString("id");
+							return operator.equals("gt") ? id.compareTo(value) > 0 :
+									operator.equals("ge") ? id.compareTo(value) >= 0 : id.compareTo(value) < 0;
+						});
+					}
+				}
+			}
+			List<JSONObject> matches = new ArrayList<>();
+			for (JSONObject item : items)
+			{
+				if (filters.stream().allMatch(filter -> filter.test(item)))
+				{
+					matches.add(item);
+				}
+			}
+			matches.sort(Comparator.comparing(item -> item.getString("id")));
+			if (descending)
+			{
+				Collections.reverse(matches);
+			}
+
+			JSONObject page = new JSONObject();
+			page.put("meta", template.getJSONObject("meta"));
+			page.put("start", start);
+			page.put("num", num);
+			page.put("total", matches.size());
+			if (matches.size() > start + num)
+			{
+				page.put("nextHref", "/api/v2/sys_md_Attribute?start=" + (start + num));
+			}
+			page.put("items", new JSONArray(
+					matches.subList(Math.min(start, matches.size()), Math.min(start + num, matches.size()))));
+
+			HttpResponse httpResponse = mock(HttpResponse.class);
+			HttpEntity httpEntity = mock(HttpEntity.class);
+			when(httpEntity.getContent()).thenReturn(new ByteArrayInputStream(page.toString().getBytes(UTF_8)));
+			when(httpResponse.getEntity()).thenReturn(httpEntity);
+			when(httpResponse.getStatusLine()).thenReturn(OK);
+			return httpResponse;
+		});
+		return httpClient;
+	}
+
+	private static Set<Path> listSpools() throws IOException
+	{
+		try (Stream<Path> files = Files.list(Paths.get(System.getProperty("java.io.tmpdir"))))
+		{
+			return files.filter(file -> file.getFileName().toString().startsWith("molgenis-rows"))
+						.collect(Collectors.toSet());
+		}
+	}
 }
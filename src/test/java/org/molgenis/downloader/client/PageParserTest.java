@@ -0,0 +1,70 @@
+package org.molgenis.downloader.client;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.testng.annotations.Test;
+
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+
+public class PageParserTest
+{
+	@Test
+	public void parseTest()
+	{
+		List<JSONObject> items = new ArrayList<>();
+		JSONObject properties = new PageParser(new InputStreamReader(
+				getClass().getResourceAsStream("/integration/attributes100.json"), StandardCharsets.UTF_8)).parse(
+				items::add);
+
+		assertEquals(items.size(), 100);
+		assertEquals(properties.getString("nextHref"), "/api/v2/sys_md_Attribute?start=200");
+		assertEquals(properties.getInt("total"), 487);
+		assertEquals(properties.getJSONObject("meta").getString("name"), "sys_md_Attribute");
+		assertFalse(properties.has("items"));
+	}
+
+	@Test
+	public void parseItemsBeforePropertiesTest()
+	{
+		List<JSONObject> items = new ArrayList<>();
+		JSONObject properties = new PageParser(
+				new StringReader("{\"items\":[{\"id\":1},{\"id\":2}],\"total\":2,\"nextHref\":\"next\"}")).parse(
+				items::add);
+
+		assertEquals(items.size(), 2);
+		assertEquals(items.get(1).getInt("id"), 2);
+		assertEquals(properties.getInt("total"), 2);
+		assertEquals(properties.getString("nextHref"), "next");
+	}
+
+	@Test
+	public void parseEmptyItemsTest()
+	{
+		List<JSONObject> items = new ArrayList<>();
+		JSONObject properties = new PageParser(new StringReader("{\"total\":0,\"items\":[]}")).parse(items::add);
+
+		assertEquals(items.size(), 0);
+		assertEquals(properties.getInt("total"), 0);
+	}
+
+	@Test(expectedExceptions = JSONException.class)
+	public void parseTruncatedPageTest()
+	{
+		new PageParser(new StringReader("{\"total\":2,\"items\":[{\"id\":1},")).parse(item -> {
+		});
+	}
+
+	@Test(expectedExceptions = JSONException.class)
+	public void parseErrorResponseTest()
+	{
+		new PageParser(new StringReader("{\"errors\":[{\"message\":\"No read permission\"}]}")).parse(item -> {
+		});
+	}
+}
@@ -0,0 +1,24 @@
+package org.molgenis.downloader.client;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+
+public class PagingModeTest
+{
+	@Test
+	public void fromTest()
+	{
+		assertEquals(PagingMode.from("nextHref"), PagingMode.NEXT_HREF);
+		assertEquals(PagingMode.from("next-href"), PagingMode.NEXT_HREF);
+		assertEquals(PagingMode.from("NEXT_HREF"), PagingMode.NEXT_HREF);
+		assertEquals(PagingMode.from("offset"), PagingMode.OFFSET);
+		assertEquals(PagingMode.from("keyset"), PagingMode.KEYSET);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void fromUnknownTest()
+	{
+		PagingMode.from("cursor");
+	}
+}
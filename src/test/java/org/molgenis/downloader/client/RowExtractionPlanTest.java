@@ -0,0 +1,96 @@
+package org.molgenis.downloader.client;
+
+import org.json.JSONObject;
+import org.molgenis.downloader.api.EntitySelection;
+import org.molgenis.downloader.api.metadata.Attribute;
+import org.molgenis.downloader.api.metadata.DataType;
+import org.molgenis.downloader.api.metadata.Entity;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import static java.util.Collections.singletonList;
+import static org.testng.Assert.assertEquals;
+
+public class RowExtractionPlanTest
+{
+	@Test
+	public void extractTest()
+	{
+		JSONObject item = new JSONObject("{\"id\":\"row1\",\"ref\":{\"code\":\"c1\",\"label\":\"one\"},"
+				+ "\"refs\":[{\"number\":1},{\"number\":2.0}],\"a\":\"part a\",\"b\":\"part b\"}");
+
+		Map<String, String> expected = new HashMap<>();
+		expected.put("id", "row1");
+		expected.put("ref", "c1");
+		expected.put("refs", "1,2");
+		expected.put("a", "part a");
+		expected.put("b", "part b");
+		assertEquals(RowExtractionPlan.create(createEntity()).extract(item), expected);
+	}
+
+	@Test
+	public void extractMissingReferencesTest()
+	{
+		Map<String, String> row = RowExtractionPlan.create(createEntity()).extract(
+				new JSONObject("{\"id\":\"row1\",\"refs\":[]}"));
+
+		Map<String, String> expected = new HashMap<>();
+		expected.put("id", "row1");
+		expected.put("refs", "");
+		expected.put("a", "");
+		expected.put("b", "");
+		assertEquals(row, expected);
+	}
+
+	@Test
+	public void getProjectionTest()
+	{
+		assertEquals(new HashSet<>(Arrays.asList(RowExtractionPlan.create(createEntity()).getProjection().split(","))),
+				new HashSet<>(Arrays.asList("id", "ref(code)", "refs(number)", "a", "b")));
+	}
+
+	@Test
+	public void selectionTest()
+	{
+		Entity entity = createEntity();
+		RowExtractionPlan plan = RowExtractionPlan.create(entity, new EntitySelection(singletonList("inner"), null));
+
+		assertEquals(new HashSet<>(Arrays.asList(plan.getProjection().split(","))),
+				new HashSet<>(Arrays.asList("id", "b")));
+	}
+
+	/**
+	 * An entity with a reference to an entity with a string id, references to an entity with a numeric id, and a
+	 * compound attribute with a nested compound attribute.
+	 */
+	private static Entity createEntity()
+	{
+		Entity codes = createEntity("codes", "code", DataType.STRING);
+		Entity numbers = createEntity("numbers", "number", DataType.INT);
+		Entity entity = createEntity("entity", "id", DataType.STRING);
+		entity.addAttribute(Attribute.createAttribute("ref", "ref").setDataType(DataType.XREF).setRefEntity(codes));
+		entity.addAttribute(
+				Attribute.createAttribute("refs", "refs").setDataType(DataType.MREF).setRefEntity(numbers));
+		Attribute inner = Attribute.createAttribute("inner", "inner")
+								   .setDataType(DataType.COMPOUND)
+								   .addPart(Attribute.createAttribute("b", "b").setDataType(DataType.STRING));
+		entity.addAttribute(Attribute.createAttribute("group", "group")
+									 .setDataType(DataType.COMPOUND)
+									 .addPart(Attribute.createAttribute("a", "a").setDataType(DataType.STRING))
+									 .addPart(inner));
+		return entity;
+	}
+
+	private static Entity createEntity(final String name, final String idName, final DataType idType)
+	{
+		Entity entity = new Entity(name);
+		Attribute id = Attribute.createAttribute(idName, idName).setDataType(idType).setIdAttribute(true);
+		entity.addAttribute(id);
+		entity.setIdAttribute(id);
+		return entity;
+	}
+}
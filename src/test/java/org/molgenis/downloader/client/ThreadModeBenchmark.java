@@ -0,0 +1,113 @@
+package org.molgenis.downloader.client;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+import org.molgenis.downloader.api.ThreadMode;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Measures the pages per second that can be fetched from a local stub server that takes 20 ms to answer, with a
+ * pool of platform threads or virtual threads blocking on one request each. Virtual threads need Java 21 or newer,
+ * on older runtimes both modes use platform threads. Run with the main method from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ThreadModeBenchmark
+{
+	private static final byte[] PAGE = "{\"start\":0,\"num\":100,\"total\":0,\"items\":[]}".getBytes(UTF_8);
+
+	@Param({ "PLATFORM", "VIRTUAL" })
+	private ThreadMode threadMode;
+
+	@Param({ "16", "256" })
+	private int concurrency;
+
+	private HttpServer server;
+	private HttpTransport transport;
+	private ExecutorService executor;
+	private String url;
+
+	@Setup
+	public void setUp() throws Exception
+	{
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 1024);
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.createContext("/", exchange ->
+		{
+			try
+			{
+				Thread.sleep(20);
+			}
+			catch (final InterruptedException ex)
+			{
+				Thread.currentThread().interrupt();
+			}
+			exchange.sendResponseHeaders(200, PAGE.length);
+			try (OutputStream out = exchange.getResponseBody())
+			{
+				out.write(PAGE);
+			}
+		});
+		server.start();
+		url = "http://localhost:" + server.getAddress().getPort() + "/api/v2/benchmark";
+
+		final HttpClientConfig config = new HttpClientConfig();
+		config.setMaxConnections(concurrency);
+		transport = new BlockingHttpTransport(HttpClientFactory.create(config), threadMode);
+		executor = Executors.newFixedThreadPool(concurrency, threadMode.newThreadFactory("benchmark-"));
+	}
+
+	@TearDown
+	public void tearDown() throws Exception
+	{
+		executor.shutdownNow();
+		transport.close();
+		server.stop(0);
+		((ExecutorService) server.getExecutor()).shutdownNow();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(1024)
+	public void fetchPages(final Blackhole blackhole) throws Exception
+	{
+		final List<Future<String>> pages = new ArrayList<>();
+		for (int index = 0; index < 1024; index++)
+		{
+			pages.add(executor.submit(() ->
+			{
+				final HttpResponse response = transport.execute(new HttpGet(url));
+				return EntityUtils.toString(response.getEntity(), UTF_8);
+			}));
+		}
+		for (final Future<String> page : pages)
+		{
+			blackhole.consume(page.get());
+		}
+	}
+
+	public static void main(String[] args) throws RunnerException
+	{
+		new Runner(new OptionsBuilder().include(ThreadModeBenchmark.class.getSimpleName()).build()).run();
+	}
+}
@@ -0,0 +1,33 @@
+package org.molgenis.downloader.emx;
+
+import org.molgenis.downloader.api.Checkpoint;
+import org.testng.annotations.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.testng.Assert.*;
+
+public class CheckpointFileTest
+{
+	@Test
+	public void updateAndLoadTest() throws Exception
+	{
+		Path path = CheckpointFile.pathFor(Files.createTempDirectory("export").resolve("out"));
+		CheckpointFile checkpoints = CheckpointFile.create(path);
+		checkpoints.update("pkg_entity", new Checkpoint(100, "id 100", false), 1234);
+		checkpoints.update("pkg_done", new Checkpoint(0, null, true), 15);
+
+		CheckpointFile loaded = CheckpointFile.load(path);
+		Checkpoint checkpoint = loaded.getCheckpoint("pkg_entity");
+		assertEquals(checkpoint.getRows(), 100);
+		assertEquals(checkpoint.getLastId(), "id 100");
+		assertFalse(checkpoint.isComplete());
+		assertEquals(loaded.getPosition("pkg_entity"), 1234);
+		assertTrue(loaded.getCheckpoint("pkg_done").isComplete());
+		assertNull(loaded.getCheckpoint("pkg_other"));
+
+		loaded.delete();
+		assertFalse(Files.exists(path));
+	}
+}
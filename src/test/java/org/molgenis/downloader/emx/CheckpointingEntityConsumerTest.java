@@ -0,0 +1,57 @@
+package org.molgenis.downloader.emx;
+
+import org.mockito.InOrder;
+import org.molgenis.downloader.api.Checkpoint;
+import org.molgenis.downloader.api.EMXWriter;
+import org.molgenis.downloader.api.ResumableDataStore;
+import org.molgenis.downloader.api.metadata.Entity;
+import org.molgenis.downloader.client.MetadataRepositoryImpl;
+import org.testng.annotations.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.*;
+
+public class CheckpointingEntityConsumerTest
+{
+	@Test
+	public void pageConsumedTest() throws Exception
+	{
+		Entity entity = new MetadataRepositoryImpl().createEntity("pkg_entity");
+		ResumableDataStore sheet = mock(ResumableDataStore.class);
+		when(sheet.sync()).thenReturn(10L, 20L, 25L);
+		Path path = CheckpointFile.pathFor(Files.createTempDirectory("export").resolve("out"));
+		CheckpointFile checkpoints = spy(CheckpointFile.create(path));
+
+		CheckpointingEntityConsumer consumer = new CheckpointingEntityConsumer(mock(EMXWriter.class), entity, null,
+				sheet, false, checkpoints);
+		int pages = 2 * CheckpointingEntityConsumer.CHECKPOINT_PAGES + 5;
+		for (int page = 1; page <= pages; page++)
+		{
+			consumer.pageConsumed(new Checkpoint(page, String.valueOf(page), page == pages));
+		}
+
+		verify(sheet, times(3)).sync();
+		InOrder order = inOrder(sheet, checkpoints);
+		order.verify(sheet).sync();
+		order.verify(checkpoints).update(eq("pkg_entity"), any(), eq(10L));
+		order.verify(sheet).sync();
+		order.verify(checkpoints).update(eq("pkg_entity"), any(), eq(20L));
+		order.verify(sheet).sync();
+		order.verify(checkpoints).update(eq("pkg_entity"), any(), eq(25L));
+
+		CheckpointFile loaded = CheckpointFile.load(path);
+		assertTrue(loaded.getCheckpoint("pkg_entity").isComplete());
+		assertEquals(loaded.getCheckpoint("pkg_entity").getRows(), pages);
+		assertEquals(loaded.getPosition("pkg_entity"), 25);
+	}
+}
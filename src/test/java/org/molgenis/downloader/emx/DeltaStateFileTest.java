@@ -0,0 +1,50 @@
+package org.molgenis.downloader.emx;
+
+import org.testng.annotations.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import static org.testng.Assert.*;
+
+public class DeltaStateFileTest
+{
+	@Test
+	public void pendingAndCommitTest() throws Exception
+	{
+		Path path = Files.createTempDirectory("export").resolve("state.properties");
+		DeltaStateFile state = DeltaStateFile.load(path);
+		state.setPending("pkg_entity", "updatedAt", "2020-01-01T00:00:00Z");
+		state.save();
+
+		DeltaStateFile failed = DeltaStateFile.load(path);
+		assertNull(failed.getMark("pkg_entity", "updatedAt"));
+		assertEquals(failed.getPending("pkg_entity", "updatedAt"), "2020-01-01T00:00:00Z");
+		failed.commit(Collections.singletonList("pkg_entity"));
+
+		DeltaStateFile committed = DeltaStateFile.load(path);
+		assertEquals(committed.getMark("pkg_entity", "updatedAt"), "2020-01-01T00:00:00Z");
+		assertNull(committed.getPending("pkg_entity", "updatedAt"));
+		assertNull(committed.getMark("pkg_entity", "modifiedAt"));
+
+		committed.setPending("pkg_entity", "modifiedAt", "2020-02-01T00:00:00Z");
+		assertNull(committed.getMark("pkg_entity", "modifiedAt"));
+		assertNull(committed.getMark("pkg_entity", "updatedAt"));
+	}
+
+	@Test
+	public void commitCompletedEntitiesTest() throws Exception
+	{
+		Path path = Files.createTempDirectory("export").resolve("state.properties");
+		DeltaStateFile state = DeltaStateFile.load(path);
+		state.setPending("pkg_done", "updatedAt", "2020-01-01T00:00:00Z");
+		state.setPending("pkg_failed", "updatedAt", "2020-01-01T00:00:00Z");
+		state.commit(Collections.singletonList("pkg_done"));
+
+		DeltaStateFile committed = DeltaStateFile.load(path);
+		assertEquals(committed.getMark("pkg_done", "updatedAt"), "2020-01-01T00:00:00Z");
+		assertNull(committed.getMark("pkg_failed", "updatedAt"));
+		assertEquals(committed.getPending("pkg_failed", "updatedAt"), "2020-01-01T00:00:00Z");
+	}
+}
@@ -0,0 +1,112 @@
+package org.molgenis.downloader.emx;
+
+import org.molgenis.downloader.api.Checkpoint;
+import org.molgenis.downloader.api.EntityConsumer;
+import org.molgenis.downloader.api.EntitySelection;
+import org.molgenis.downloader.api.MolgenisClient;
+import org.molgenis.downloader.api.metadata.Attribute;
+import org.molgenis.downloader.api.metadata.DataType;
+import org.molgenis.downloader.api.metadata.Entity;
+import org.testng.annotations.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.molgenis.downloader.api.metadata.MolgenisVersion.VERSION_3;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+public class EMXClientIncrementalTest
+{
+	@Test
+	public void downloadChangesTest() throws Exception
+	{
+		MolgenisClient molgenisClient = createClient(true);
+		when(molgenisClient.getMaxValue("pkg_entity", "updatedAt", "2020-01-01T00:00:00Z")).thenReturn(
+				"2020-02-01T00:00:00Z");
+
+		Path directory = Files.createTempDirectory("export");
+		Path state = directory.resolve("state.properties");
+		List<String> entities = Collections.singletonList("pkg_entity");
+
+		EMXClient first = new EMXClient(molgenisClient);
+		first.setDirectory(true);
+		first.setDeltaState(state);
+		first.downloadEMX(entities, directory.resolve("first"), false, true, VERSION_3, null);
+		verify(molgenisClient).streamEntityData(eq("pkg_entity"), any(EntityConsumer.class), isNull(), any(),
+				isNull());
+
+		EMXClient second = new EMXClient(molgenisClient);
+		second.setDirectory(true);
+		second.setDeltaState(state);
+		second.setSelections(Collections.singletonMap("pkg_entity", new EntitySelection(null, "id==a,id==b")));
+		second.downloadEMX(entities, directory.resolve("second"), false, true, VERSION_3, null);
+		String filter = "(id==a,id==b);updatedAt=gt=\"2020-01-01T00:00:00Z\"";
+		verify(molgenisClient).streamEntityData(eq("pkg_entity"), any(EntityConsumer.class), isNull(), any(),
+				argThat(selection -> selection != null && filter.equals(selection.getFilter())));
+
+		assertEquals(DeltaStateFile.load(state).getMark("pkg_entity", "updatedAt"), "2020-02-01T00:00:00Z");
+	}
+
+	/**
+	 * A stream that fails is only logged by the client, so the export itself succeeds. The mark may not move, or
+	 * the rows after the failure would never be exported.
+	 */
+	@Test
+	public void failedStreamTest() throws Exception
+	{
+		MolgenisClient molgenisClient = createClient(false);
+		Path directory = Files.createTempDirectory("export");
+		Path state = directory.resolve("state.properties");
+
+		EMXClient client = new EMXClient(molgenisClient);
+		client.setDirectory(true);
+		client.setDeltaState(state);
+		client.downloadEMX(Collections.singletonList("pkg_entity"), directory.resolve("export"), false, true,
+				VERSION_3, null);
+
+		DeltaStateFile delta = DeltaStateFile.load(state);
+		assertNull(delta.getMark("pkg_entity", "updatedAt"));
+		assertEquals(delta.getPending("pkg_entity", "updatedAt"), "2020-01-01T00:00:00Z");
+	}
+
+	/**
+	 * @param complete whether the streams of the client reach the end of the rows, or stop after the first page
+	 */
+	private static MolgenisClient createClient(final boolean complete) throws Exception
+	{
+		Entity entity = new Entity("pkg_entity");
+		Attribute id = Attribute.createAttribute("id", "id").setDataType(DataType.STRING);
+		entity.addAttribute(id);
+		entity.setIdAttribute(id);
+		entity.addAttribute(Attribute.createAttribute("createdAt", "createdAt")
+									 .setDataType(DataType.DATE_TIME)
+									 .setAuto(true));
+		entity.addAttribute(Attribute.createAttribute("updatedAt", "updatedAt")
+									 .setDataType(DataType.DATE_TIME)
+									 .setAuto(true));
+
+		MolgenisClient molgenisClient = mock(MolgenisClient.class);
+		when(molgenisClient.getEntity("pkg_entity")).thenReturn(entity);
+		when(molgenisClient.getMaxValue("pkg_entity", "updatedAt", "1970-01-01T00:00:00Z")).thenReturn(
+				"2020-01-01T00:00:00Z");
+		doAnswer(invocation ->
+		{
+			EntityConsumer consumer = invocation.getArgument(1);
+			consumer.accept(Collections.singletonMap("id", "a"));
+			consumer.pageConsumed(new Checkpoint(1, "a", complete));
+			return null;
+		}).when(molgenisClient).streamEntityData(any(), any(), any(), any(), any());
+		return molgenisClient;
+	}
+}
@@ -0,0 +1,97 @@
+package org.molgenis.downloader.emx;
+
+import org.molgenis.downloader.api.Checkpoint;
+import org.molgenis.downloader.api.EntityConsumer;
+import org.molgenis.downloader.api.EntitySelection;
+import org.molgenis.downloader.api.MetadataConsumer;
+import org.molgenis.downloader.api.MolgenisClient;
+import org.molgenis.downloader.api.metadata.Attribute;
+import org.molgenis.downloader.api.metadata.DataType;
+import org.molgenis.downloader.api.metadata.Entity;
+import org.molgenis.downloader.client.MetadataRepositoryImpl;
+import org.testng.annotations.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.molgenis.downloader.api.metadata.MolgenisVersion.VERSION_3;
+import static org.testng.Assert.assertEquals;
+
+public class EMXClientSelectionTest
+{
+	@Test
+	public void selectCompoundTest() throws Exception
+	{
+		MetadataRepositoryImpl repository = new MetadataRepositoryImpl();
+		Entity entity = repository.createEntity("pkg_entity");
+		Attribute id = createAttribute(repository, entity, "id", DataType.STRING);
+		entity.addAttribute(id);
+		entity.setIdAttribute(id);
+		entity.addAttribute(createAttribute(repository, entity, "group", DataType.COMPOUND).addPart(
+				createAttribute(repository, entity, "a", DataType.STRING)).addPart(
+				createAttribute(repository, entity, "b", DataType.STRING)));
+		entity.addAttribute(createAttribute(repository, entity, "c", DataType.STRING));
+
+		MolgenisClient molgenisClient = mock(MolgenisClient.class);
+		when(molgenisClient.getEntity("pkg_entity")).thenReturn(entity);
+		doAnswer(invocation ->
+		{
+			invocation.<MetadataConsumer>getArgument(0).accept(repository);
+			return null;
+		}).when(molgenisClient).streamMetadata(any(), any());
+		doAnswer(invocation ->
+		{
+			EntityConsumer consumer = invocation.getArgument(1);
+			Map<String, String> row = new HashMap<>();
+			row.put("id", "1");
+			row.put("a", "one");
+			row.put("b", "two");
+			row.put("c", "three");
+			consumer.accept(row);
+			consumer.pageConsumed(new Checkpoint(1, "1", true));
+			return null;
+		}).when(molgenisClient).streamEntityData(any(), any(), any(), any(), any());
+
+		Path directory = Files.createTempDirectory("export").resolve("export");
+		EMXClient client = new EMXClient(molgenisClient);
+		client.setDirectory(true);
+		client.setSelections(singletonMap("pkg_entity", new EntitySelection(singletonList("group"), null)));
+		client.downloadEMX(singletonList("pkg_entity"), directory, true, false, VERSION_3, null);
+
+		// the parts of the selected compound are written, the attribute that is not selected is left out
+		List<String> rows = Files.readAllLines(directory.resolve("pkg_entity.tsv"), UTF_8);
+		assertEquals(rows.size(), 2);
+		assertEquals(new HashSet<>(asList(rows.get(0).replace("\"", "").split("\t"))),
+				new HashSet<>(asList("id", "a", "b")));
+
+		List<String> attributes = Files.readAllLines(directory.resolve("attributes.tsv"), UTF_8)
+									   .stream()
+									   .skip(1)
+									   .map(line -> line.split("\t")[1].replace("\"", ""))
+									   .sorted()
+									   .collect(Collectors.toList());
+		assertEquals(attributes, asList("a", "b", "group", "id"));
+	}
+
+	private static Attribute createAttribute(final MetadataRepositoryImpl repository, final Entity entity,
+			final String name, final DataType dataType)
+	{
+		return repository.createAttribute(entity.getFullName() + "_" + name)
+						 .setName(name)
+						 .setEntityFullname(entity.getFullName())
+						 .setDataType(dataType);
+	}
+}
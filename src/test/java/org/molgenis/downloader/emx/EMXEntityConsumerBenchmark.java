@@ -0,0 +1,108 @@
+package org.molgenis.downloader.emx;
+
+import org.molgenis.downloader.api.EMXDataStore;
+import org.molgenis.downloader.api.EMXWriter;
+import org.molgenis.downloader.api.EntityConsumer;
+import org.molgenis.downloader.api.MetadataConsumer;
+import org.molgenis.downloader.api.metadata.Attribute;
+import org.molgenis.downloader.api.metadata.Entity;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the rows per second {@link EMXEntityConsumer} writes to a data store for entities of different widths.
+ * Run with the main method from the test classpath.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class EMXEntityConsumerBenchmark
+{
+	@Param({ "50", "300", "1000" })
+	private int columns;
+
+	private EntityConsumer consumer;
+	private Map<String, String> row;
+
+	@Setup
+	public void setUp(final Blackhole blackhole) throws Exception
+	{
+		final Entity entity = new Entity("benchmark");
+		row = new HashMap<>();
+		for (int index = 0; index < columns; index++)
+		{
+			final String name = "column" + index;
+			entity.addAttribute(Attribute.createAttribute(name, name));
+			row.put(name, index % 5 == 0 ? " " : "value" + index);
+		}
+		consumer = new EMXEntityConsumer(new BlackholeWriter(blackhole), entity);
+	}
+
+	@Benchmark
+	public void writeRow()
+	{
+		consumer.accept(row);
+	}
+
+	public static void main(String[] args) throws RunnerException
+	{
+		new Runner(new OptionsBuilder().include(EMXEntityConsumerBenchmark.class.getSimpleName()).build()).run();
+	}
+
+	private static class BlackholeWriter implements EMXWriter
+	{
+		private final Blackhole blackhole;
+
+		private BlackholeWriter(final Blackhole blackhole)
+		{
+			this.blackhole = blackhole;
+		}
+
+		@Override
+		public EntityConsumer createConsumerForEntity(final Entity entity)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public MetadataConsumer createMetadataConsumer()
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public EMXDataStore createDataStore(final String name)
+		{
+			return blackhole::consume;
+		}
+
+		@Override
+		public boolean hasExceptions()
+		{
+			return false;
+		}
+
+		@Override
+		public List<Exception> getExceptions()
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void addException(final Exception ex)
+		{
+			throw new UnsupportedOperationException();
+		}
+	}
+}
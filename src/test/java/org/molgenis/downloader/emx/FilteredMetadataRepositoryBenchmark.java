@@ -0,0 +1,96 @@
+package org.molgenis.downloader.emx;
+
+import org.molgenis.downloader.api.metadata.Attribute;
+import org.molgenis.downloader.api.metadata.DataType;
+import org.molgenis.downloader.api.metadata.Entity;
+import org.molgenis.downloader.api.metadata.Package;
+import org.molgenis.downloader.client.MetadataRepositoryImpl;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long {@link FilteredMetadataRepository} takes to collect and order a synthetic schema in which every
+ * entity extends another in chains of five, sits in a nested package and refers to other entities. Run with the main
+ * method from the test classpath.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilteredMetadataRepositoryBenchmark
+{
+	private static final int ATTRIBUTES = 20;
+	private static final int REFERENCES = 3;
+	private static final int PACKAGES = 100;
+
+	@Param({ "1000", "10000" })
+	private int entities;
+
+	private MetadataRepositoryImpl repository;
+	private List<String> requested;
+
+	@Setup
+	public void setUp()
+	{
+		final Random random = new Random(42);
+		repository = new MetadataRepositoryImpl();
+		requested = new ArrayList<>();
+		final Package parent = repository.createPackage("root");
+		final List<Entity> created = new ArrayList<>();
+		for (int index = 0; index < entities; index++)
+		{
+			final Package pkg = repository.createPackage("root_package" + index % PACKAGES);
+			pkg.setParent(parent);
+			final String fullName = pkg.getName() + "_entity" + index;
+			final Entity entity = repository.createEntity(fullName);
+			entity.setPackage(pkg);
+			entity.setAbstractClass(index % 5 == 0);
+			if (index % 5 != 0)
+			{
+				entity.setBase(created.get(index - 1));
+			}
+			for (int attribute = 0; attribute < ATTRIBUTES; attribute++)
+			{
+				final Attribute att = repository.createAttribute(fullName + "_attribute" + attribute)
+												.setName("attribute" + attribute)
+												.setEntityFullname(fullName);
+				if (attribute == 0)
+				{
+					entity.setIdAttribute(att.setIdAttribute(true));
+				}
+				else if (attribute <= REFERENCES && !created.isEmpty())
+				{
+					att.setDataType(DataType.XREF).setRefEntity(created.get(random.nextInt(created.size())));
+				}
+				entity.addAttribute(att);
+			}
+			created.add(entity);
+			requested.add(fullName);
+		}
+	}
+
+	@Benchmark
+	public void filterAndSort(final Blackhole blackhole)
+	{
+		final FilteredMetadataRepository filtered = new FilteredMetadataRepository(repository, requested);
+		blackhole.consume(filtered.getEntities());
+		blackhole.consume(filtered.getAttributes());
+		blackhole.consume(filtered.getPackages());
+	}
+
+	public static void main(String[] args) throws RunnerException
+	{
+		new Runner(new OptionsBuilder().include(FilteredMetadataRepositoryBenchmark.class.getSimpleName()).build())
+				.run();
+	}
+}
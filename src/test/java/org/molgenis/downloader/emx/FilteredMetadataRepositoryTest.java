@@ -0,0 +1,121 @@
+package org.molgenis.downloader.emx;
+
+import org.molgenis.downloader.api.EntitySelection;
+import org.molgenis.downloader.api.metadata.Attribute;
+import org.molgenis.downloader.api.metadata.DataType;
+import org.molgenis.downloader.api.metadata.Entity;
+import org.molgenis.downloader.client.MetadataRepositoryImpl;
+import org.testng.annotations.Test;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
+import static org.testng.Assert.assertEquals;
+
+public class FilteredMetadataRepositoryTest
+{
+	@Test
+	public void dependenciesAndOrderTest()
+	{
+		MetadataRepositoryImpl source = createRepository();
+
+		FilteredMetadataRepository filtered = new FilteredMetadataRepository(source, singletonList("a_child"));
+
+		assertEquals(names(filtered.getEntities()), asList("x_abstract", "r_ref", "z_root", "m_middle", "a_child"));
+		assertEquals(filtered.getAttributes().stream().map(Attribute::getName).collect(Collectors.toList()),
+				asList("id", "ref", "id", "id", "id", "id"));
+	}
+
+	@Test
+	public void selectionTest()
+	{
+		MetadataRepositoryImpl source = createRepository();
+
+		FilteredMetadataRepository filtered = new FilteredMetadataRepository(source, singletonList("a_child"),
+				singletonMap("a_child", new EntitySelection(singletonList("id"), null)));
+
+		assertEquals(names(filtered.getEntities()), asList("x_abstract", "z_root", "m_middle", "a_child"));
+	}
+
+	@Test
+	public void selectionCompoundTest()
+	{
+		MetadataRepositoryImpl source = createRepository();
+		Entity child = source.getEntity("a_child");
+		Attribute part = source.createAttribute("a_child_part")
+							   .setName("part")
+							   .setEntityFullname(child.getFullName())
+							   .setDataType(DataType.XREF)
+							   .setRefEntity(source.getEntity("unused"));
+		child.addAttribute(source.createAttribute("a_child_group")
+								 .setName("group")
+								 .setEntityFullname(child.getFullName())
+								 .setDataType(DataType.COMPOUND)
+								 .addPart(part));
+
+		FilteredMetadataRepository filtered = new FilteredMetadataRepository(source, singletonList("a_child"),
+				singletonMap("a_child", new EntitySelection(singletonList("group"), null)));
+
+		assertEquals(names(filtered.getEntities()), asList("x_abstract", "unused", "z_root", "m_middle", "a_child"));
+		assertEquals(filtered.getAttributes()
+							 .stream()
+							 .filter(attribute -> attribute.getEntityFullname().equals("a_child"))
+							 .map(Attribute::getName)
+							 .sorted()
+							 .collect(Collectors.toList()), asList("group", "id", "part"));
+	}
+
+	@Test
+	public void sortTopologicallyTest()
+	{
+		Entity first = new Entity("b");
+		Entity second = new Entity("a").setBase(first);
+		Entity cyclic = new Entity("c");
+		Entity other = new Entity("d").setBase(cyclic);
+		cyclic.setBase(other);
+
+		assertEquals(names(FilteredMetadataRepository.sortTopologically(asList(other, second, cyclic, first))),
+				asList("b", "a", "c", "d"));
+	}
+
+	/**
+	 * A child that extends a middle entity that extends a root, named so that sorting on names alone would put the
+	 * child first, and an abstract entity and a referenced entity next to them.
+	 */
+	private static MetadataRepositoryImpl createRepository()
+	{
+		MetadataRepositoryImpl repository = new MetadataRepositoryImpl();
+		Entity root = addEntity(repository, "z_root");
+		Entity middle = addEntity(repository, "m_middle").setBase(root);
+		Entity child = addEntity(repository, "a_child").setBase(middle);
+		addEntity(repository, "x_abstract").setAbstractClass(true);
+		root.setBase(repository.getEntity("x_abstract"));
+		Entity ref = addEntity(repository, "r_ref");
+		addEntity(repository, "unused");
+		Attribute attribute = repository.createAttribute("a_child_ref")
+										.setName("ref")
+										.setEntityFullname(child.getFullName())
+										.setDataType(DataType.XREF)
+										.setRefEntity(ref);
+		child.addAttribute(attribute);
+		return repository;
+	}
+
+	private static Entity addEntity(final MetadataRepositoryImpl repository, final String fullName)
+	{
+		Entity entity = repository.createEntity(fullName);
+		Attribute id = repository.createAttribute(fullName + "_id").setName("id").setEntityFullname(fullName);
+		entity.addAttribute(id);
+		entity.setIdAttribute(id);
+		return entity;
+	}
+
+	private static List<String> names(final Collection<Entity> entities)
+	{
+		return entities.stream().map(Entity::getFullName).collect(Collectors.toList());
+	}
+}
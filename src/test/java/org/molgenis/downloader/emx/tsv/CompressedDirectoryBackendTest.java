@@ -0,0 +1,65 @@
+package org.molgenis.downloader.emx.tsv;
+
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorInputStream;
+import org.apache.commons.io.IOUtils;
+import org.molgenis.downloader.api.EMXDataStore;
+import org.testng.annotations.Test;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static org.testng.Assert.assertEquals;
+
+public class CompressedDirectoryBackendTest
+{
+	@Test
+	public void gzipTest() throws Exception
+	{
+		Path directory = write(Codec.GZIP, Deflater.BEST_SPEED);
+		try (InputStream in = new GZIPInputStream(Files.newInputStream(directory.resolve("entity.tsv.gz"))))
+		{
+			assertEquals(IOUtils.toString(in, UTF_8), expected());
+		}
+	}
+
+	@Test
+	public void lz4Test() throws Exception
+	{
+		Path directory = write(Codec.LZ4, Deflater.DEFAULT_COMPRESSION);
+		try (InputStream in = new FramedLZ4CompressorInputStream(
+				Files.newInputStream(directory.resolve("entity.tsv.lz4"))))
+		{
+			assertEquals(IOUtils.toString(in, UTF_8), expected());
+		}
+	}
+
+	private static Path write(Codec codec, int level) throws Exception
+	{
+		Path directory = Files.createTempDirectory("backend");
+		try (CompressedDirectoryBackend backend = new CompressedDirectoryBackend(directory, codec, level))
+		{
+			EMXDataStore store = backend.createDataStore("entity");
+			store.writeRow(asList("id", "value"));
+			for (int i = 0; i < 100000; i++)
+			{
+				store.writeRow(new String[] { String.valueOf(i), "value" + i });
+			}
+		}
+		return directory;
+	}
+
+	private static String expected()
+	{
+		StringBuilder builder = new StringBuilder("\"id\"\t\"value\"\n");
+		for (int i = 0; i < 100000; i++)
+		{
+			builder.append('"').append(i).append("\"\t\"value").append(i).append("\"\n");
+		}
+		return builder.toString();
+	}
+}
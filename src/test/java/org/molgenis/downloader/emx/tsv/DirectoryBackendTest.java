@@ -0,0 +1,38 @@
+package org.molgenis.downloader.emx.tsv;
+
+import org.molgenis.downloader.api.ResumableDataStore;
+import org.testng.annotations.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static org.testng.Assert.assertEquals;
+
+public class DirectoryBackendTest
+{
+	@Test
+	public void resumeDataStoreTest() throws Exception
+	{
+		Path directory = Files.createTempDirectory("backend");
+		long position;
+		try (DirectoryBackend backend = new DirectoryBackend(directory))
+		{
+			ResumableDataStore store = backend.createDataStore("entity");
+			store.writeRow(asList("id", "value"));
+			store.writeRow(new String[] { "1", "one" });
+			position = store.sync();
+			store.writeRow(new String[] { "2", "lost" });
+		}
+
+		try (DirectoryBackend backend = new DirectoryBackend(directory))
+		{
+			ResumableDataStore store = backend.resumeDataStore("entity", position);
+			store.writeRow(new String[] { "2", "two" });
+		}
+
+		assertEquals(new String(Files.readAllBytes(directory.resolve("entity.tsv")), UTF_8),
+				"\"id\"\t\"value\"\n\"1\"\t\"one\"\n\"2\"\t\"two\"\n");
+	}
+}
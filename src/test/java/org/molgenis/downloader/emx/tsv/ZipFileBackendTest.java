@@ -0,0 +1,69 @@
+package org.molgenis.downloader.emx.tsv;
+
+import org.apache.commons.io.IOUtils;
+import org.molgenis.downloader.api.EMXDataStore;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static org.testng.Assert.assertEquals;
+
+public class ZipFileBackendTest
+{
+	@Test
+	public void concurrentDataStoresTest() throws Exception
+	{
+		File file = File.createTempFile("backend", ".zip");
+		try (ZipFileBackend backend = new ZipFileBackend(file.toPath()))
+		{
+			EMXDataStore first = backend.createDataStore("first");
+			EMXDataStore second = backend.createDataStore("second");
+			EMXDataStore third = backend.createDataStore("third");
+			first.writeRow(asList("id", "value"));
+			second.writeRow(asList("id"));
+			third.writeRow(new String[] { "name" });
+			first.writeRow(asList("1", "one"));
+			second.writeRow(new String[] { "2" });
+			second.close();
+			first.close();
+		}
+
+		try (ZipFile zip = new ZipFile(file))
+		{
+			assertEquals(zip.size(), 3);
+			assertEquals(read(zip, "first.tsv"), "\"id\"\t\"value\"\n\"1\"\t\"one\"\n");
+			assertEquals(read(zip, "second.tsv"), "\"id\"\n\"2\"\n");
+			assertEquals(read(zip, "third.tsv"), "\"name\"\n");
+		}
+	}
+
+	@Test
+	public void storedTest() throws Exception
+	{
+		File file = File.createTempFile("backend", ".zip");
+		try (ZipFileBackend backend = new ZipFileBackend(file.toPath(), ZipEntry.STORED, Deflater.NO_COMPRESSION))
+		{
+			try (EMXDataStore store = backend.createDataStore("entity"))
+			{
+				store.writeRow(asList("id", "value"));
+				store.writeRow(asList("1", null));
+			}
+		}
+
+		try (ZipFile zip = new ZipFile(file))
+		{
+			assertEquals(zip.getEntry("entity.tsv").getMethod(), ZipEntry.STORED);
+			assertEquals(read(zip, "entity.tsv"), "\"id\"\t\"value\"\n\"1\"\t\n");
+		}
+	}
+
+	private static String read(ZipFile zip, String name) throws Exception
+	{
+		return IOUtils.toString(zip.getInputStream(zip.getEntry(name)), UTF_8);
+	}
+}
@@ -1,17 +1,34 @@
 package org.molgenis.downloader.integration;
 
 import org.apache.commons.io.IOUtils;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.HttpResponse;
 import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.molgenis.downloader.client.AsyncHttpTransport;
+import org.molgenis.downloader.client.HttpClientConfig;
+import org.molgenis.downloader.client.HttpClientFactory;
 import org.molgenis.downloader.client.MolgenisRestApiClient;
 import org.molgenis.downloader.emx.EMXClient;
 import org.testng.annotations.Test;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
 import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 import static org.molgenis.downloader.api.metadata.MolgenisVersion.VERSION_2;
+import static org.testng.Assert.assertEquals;
 
 public class EmxClientTest
 {
@@ -33,4 +50,110 @@ public class EmxClientTest
 
 		ZipFileAssert.assertEquals(expected, actual);
 	}
+
+	@Test
+	public void zipParallelITTest() throws Exception
+	{
+		HttpClient httpClient = new TestHttpClient();
+		MolgenisRestApiClient client = new MolgenisRestApiClient(httpClient, new URI(""));
+		EMXClient emxClient = new EMXClient(client, 3);
+
+		File actual = File.createTempFile("download", ".zip");
+		emxClient.downloadEMX(Collections.singletonList("org_molgenis_test_TypeTest"), actual.toPath(), true, true,
+				VERSION_2, null);
+
+		File expected = File.createTempFile("download-expected", ".zip");
+		FileOutputStream outputStream = new FileOutputStream(expected);
+		IOUtils.copy(getClass().getResourceAsStream("/integration/download.zip"), outputStream);
+		outputStream.close();
+
+		ZipFileAssert.assertEquals(expected, actual);
+	}
+
+	@Test
+	public void zipAsyncITTest() throws Exception
+	{
+		HttpClient httpClient = new TestHttpClient();
+		HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", exchange ->
+		{
+			HttpResponse response = httpClient.execute(new HttpGet(exchange.getRequestURI()));
+			exchange.sendResponseHeaders(200, 0);
+			try (InputStream in = response.getEntity().getContent(); OutputStream out = exchange.getResponseBody())
+			{
+				IOUtils.copy(in, out);
+			}
+		});
+		server.start();
+		File actual = File.createTempFile("download", ".zip");
+		try (MolgenisRestApiClient client = new MolgenisRestApiClient(
+				new AsyncHttpTransport(HttpClientFactory.createAsync(new HttpClientConfig()),
+						HttpClientFactory.create(new HttpClientConfig())),
+				new URI("http://localhost:" + server.getAddress().getPort())))
+		{
+			client.setPrefetchPages(2);
+			EMXClient emxClient = new EMXClient(client, 3);
+			emxClient.downloadEMX(Collections.singletonList("org_molgenis_test_TypeTest"), actual.toPath(), true,
+					true, VERSION_2, null);
+		}
+		finally
+		{
+			server.stop(0);
+		}
+
+		File expected = File.createTempFile("download-expected", ".zip");
+		FileOutputStream outputStream = new FileOutputStream(expected);
+		IOUtils.copy(getClass().getResourceAsStream("/integration/download.zip"), outputStream);
+		outputStream.close();
+
+		ZipFileAssert.assertEquals(expected, actual);
+	}
+
+	@Test
+	public void xlsxITTest() throws Exception
+	{
+		HttpClient httpClient = new TestHttpClient();
+		MolgenisRestApiClient client = new MolgenisRestApiClient(httpClient, new URI(""));
+		EMXClient emxClient = new EMXClient(client);
+		emxClient.setExcelRowWindow(10);
+		emxClient.setCompressTempFiles(true);
+
+		File actual = File.createTempFile("download", ".xlsx");
+		emxClient.downloadEMX(Collections.singletonList("org_molgenis_test_TypeTest"), actual.toPath(), true, true,
+				VERSION_2, null);
+
+		try (Workbook workbook = new XSSFWorkbook(actual))
+		{
+			assertEquals(workbook.getNumberOfSheets(), 7);
+			Sheet data = workbook.getSheet("org_molgenis_test_TypeTest");
+			assertEquals(data.getLastRowNum(), 38);
+			assertEquals(data.getRow(0).getCell(0).getStringCellValue(), "id");
+			assertEquals(data.getRow(38).getCell(0).getStringCellValue(), "38");
+		}
+	}
+
+	@Test
+	public void directoryITTest() throws Exception
+	{
+		HttpClient httpClient = new TestHttpClient();
+		MolgenisRestApiClient client = new MolgenisRestApiClient(httpClient, new URI(""));
+		EMXClient emxClient = new EMXClient(client, 3);
+		emxClient.setDirectory(true);
+
+		Path actual = Files.createTempDirectory("download");
+		emxClient.downloadEMX(Collections.singletonList("org_molgenis_test_TypeTest"), actual, true, true, VERSION_2,
+				null);
+
+		try (ZipInputStream expected = new ZipInputStream(getClass().getResourceAsStream("/integration/download.zip")))
+		{
+			int entries = 0;
+			for (ZipEntry entry = expected.getNextEntry(); entry != null; entry = expected.getNextEntry())
+			{
+				assertEquals(Files.readAllBytes(actual.resolve(entry.getName())), IOUtils.toByteArray(expected),
+						entry.getName());
+				entries++;
+			}
+			assertEquals(Files.list(actual).count(), entries);
+		}
+	}
 }
@@ -4,10 +4,12 @@ import org.apache.http.HttpEntity;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.message.BasicStatusLine;
 import org.apache.http.params.HttpParams;
 import org.apache.http.protocol.HttpContext;
 
@@ -127,6 +129,10 @@ class TestHttpClient implements HttpClient
 		else if (httpUriRequest.getURI().getPath().equals("/api/v2/base_Location")) response = locationHttpResponse;
 		else if (httpUriRequest.getURI().getPath().equals("/api/v2/base_TypeTestRef")) response = refHttpResponse;
 
+		if (response != null)
+		{
+			when(response.getStatusLine()).thenReturn(new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"));
+		}
 		return response;
 	}
 